@@ -0,0 +1,57 @@
+package com.search.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.search.ranking.DotProduct;
+
+// One embedding against one row. The kernel is chosen once per JVM, so each variant gets its own
+// fork: the Vector API one needs the incubator module, the scalar one turns it off.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DotProductBenchmark {
+
+    @Param({"384", "768", "1536"})
+    int dimensions;
+
+    float[] a;
+    float[] b;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        a = new float[dimensions];
+        b = new float[dimensions];
+        for(int i = 0; i < dimensions; i++) {
+            a[i] = random.nextFloat() * 2 - 1;
+            b[i] = random.nextFloat() * 2 - 1;
+        }
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+    public float simd() {
+        return DotProduct.compute(a, 0, b, 0, dimensions);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dsearch.vector.simd=false")
+    public float scalar() {
+        return DotProduct.compute(a, 0, b, 0, dimensions);
+    }
+}
@@ -0,0 +1,154 @@
+package com.search.benchmarks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import com.search.embedding.EmbeddingMatrix;
+import com.search.embedding.HnswParams;
+import com.search.index.QueryContext;
+import com.search.ranking.ScoredDoc;
+import com.search.ranking.TopKCollector;
+
+// Top-10 semantic search: every row scored (exact) against a walk of the HNSW graph, and against
+// the scoring the matrix replaced (mapCosine: vectors in a map, cosine with both norms computed per
+// row). Rows are Gaussian vectors around one centroid per hundred rows, so neighbourhoods are
+// uneven the way real embeddings are; recall of the graph against the exact answer is printed on
+// tear-down. Each trial builds only what its benchmark searches, so only hnsw trials build a
+// graph, one per parameter combination, e.g. -p rows=100000 -p efSearch=32,64,128. A million rows
+// take about 3 GB per copy and their graph a long while to build.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Xmx6g"})
+public class EmbeddingSearchBenchmark {
+
+    private static final int K = 10;
+    private static final int QUERIES = 256;
+
+    @Param({"10000", "1000000"})
+    int rows;
+
+    @Param({"768"})
+    int dimensions;
+
+    @Param({"64"})
+    int efSearch;
+
+    EmbeddingMatrix matrix;
+    Map<Long, float[]> embeddings;
+    boolean graph;
+    float[][] queries;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkParams params) {
+        String benchmark = params.getBenchmark();
+        graph = benchmark.endsWith(".hnsw");
+        boolean baseline = benchmark.endsWith(".mapCosine");
+
+        Random random = new Random(7);
+        float[][] centroids = new float[Math.max(10, rows / 100)][];
+        for(int c = 0; c < centroids.length; c++) {
+            centroids[c] = gaussian(random, new float[dimensions], 1);
+        }
+        if(baseline) {
+            embeddings = new HashMap<>();
+        } else {
+            int parallelism = Runtime.getRuntime().availableProcessors();
+            matrix = graph ? new EmbeddingMatrix(parallelism, new HnswParams(16, 100, efSearch)) : new EmbeddingMatrix(parallelism);
+        }
+        for(int row = 0; row < rows; row++) {
+            float[] embedding = gaussian(random, centroids[random.nextInt(centroids.length)], 0.7);
+            if(baseline) embeddings.put(row + 1L, embedding);
+            else matrix.put(row + 1, embedding);
+        }
+        queries = new float[QUERIES][];
+        for(int q = 0; q < QUERIES; q++) {
+            queries[q] = gaussian(random, centroids[random.nextInt(centroids.length)], 0.7);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if(!graph) {
+            if(matrix != null) matrix.close();
+            return;
+        }
+        int found = 0;
+        for(float[] query : queries) {
+            List<ScoredDoc> exact = matrix.exactTopK(query, K, QueryContext.unbounded());
+            List<ScoredDoc> approximate = matrix.topK(query, K, efSearch, QueryContext.unbounded());
+            for(ScoredDoc doc : approximate) {
+                if(exact.stream().anyMatch(e -> e.docId() == doc.docId())) found++;
+            }
+        }
+        System.out.printf("%nrecall@%d at efSearch %d: %.3f%n", K, efSearch, found / (double) (K * QUERIES));
+        matrix.close();
+    }
+
+    @Benchmark
+    public List<ScoredDoc> exact() {
+        return matrix.exactTopK(nextQuery(), K, QueryContext.unbounded());
+    }
+
+    @Benchmark
+    public List<ScoredDoc> hnsw() {
+        return matrix.topK(nextQuery(), K, efSearch, QueryContext.unbounded());
+    }
+
+    @Benchmark
+    public List<ScoredDoc> mapCosine() {
+        float[] query = nextQuery();
+        TopKCollector top = new TopKCollector(K);
+        for(var entry : embeddings.entrySet()) {
+            top.collect(Math.toIntExact(entry.getKey()), cosine(query, entry.getValue()));
+        }
+        return top.toList(0);
+    }
+
+    private float[] nextQuery() {
+        return queries[next++ & (QUERIES - 1)];
+    }
+
+    // The removed CosineSimilarity.compute
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0.0;
+        double normA = 0.0;
+        double normB = 0.0;
+        for(int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        double denom = Math.sqrt(normA) * Math.sqrt(normB);
+        return denom == 0.0 ? 0.0 : dot / denom;
+    }
+
+    private static float[] gaussian(Random random, float[] mean, double sigma) {
+        float[] vector = new float[mean.length];
+        for(int i = 0; i < vector.length; i++) {
+            vector[i] = (float) (mean[i] + random.nextGaussian() * sigma);
+        }
+        return vector;
+    }
+}
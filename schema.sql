@@ -30,7 +30,6 @@ CREATE TABLE IF NOT EXISTS postings (
     term_id INTEGER NOT NULL REFERENCES terms(id),
     doc_id INTEGER NOT NULL,
     tf INT NOT NULL,
-    positions INT[] NOT NULL,
-    offsets INT[] NOT NULL,
+    occurrences BYTEA NOT NULL,
     PRIMARY KEY (segment_id, term_id, doc_id)
 );
\ No newline at end of file
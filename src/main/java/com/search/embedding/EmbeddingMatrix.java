@@ -0,0 +1,351 @@
+package com.search.embedding;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import com.search.index.QueryContext;
+import com.search.ranking.DotProduct;
+import com.search.ranking.ScoredDoc;
+import com.search.ranking.TopKCollector;
+
+// Resident copy of every document embedding, normalized to unit length and packed row after row
+// into float blocks of BLOCK_ROWS rows, so scoring a query is one dot product per row over
+// contiguous memory. Blocks are scored by at most 'parallelism' tasks on a dedicated pool. Storing
+// a document's embedding again overwrites its row; searches and stores may run concurrently.
+//
+// With HNSW parameters, rows are also linked into an HnswGraph as they are added and topK searches
+// the graph instead of scoring every row. The graph can be saved next to the segment files so a
+// restart does not rebuild it. File layout (big-endian): magic, version, dimensions, row count,
+// canonical id of every row, the graph (see HnswGraph.write), then footer magic and CRC32C of
+// everything before the footer.
+public final class EmbeddingMatrix implements AutoCloseable {
+    private static final int MAGIC = 0x484E5357;
+    private static final int FOOTER_MAGIC = 0x57534E48;
+    private static final int VERSION = 1;
+    private static final int BLOCK_ROWS = 4096;
+    // Fewer blocks than this are scored on the calling thread; forking would cost more than it saves
+    private static final int PARALLEL_BLOCKS = 4;
+
+    private final int parallelism;
+    private final ForkJoinPool pool;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Integer> rows = new HashMap<>();
+    private float[][] blocks = new float[0][];
+    private int[] ids = new int[0];
+    private int dimensions = -1;
+    private int size;
+    private HnswGraph graph;
+    private final HnswGraph.Similarity similarity = (a, b) -> DotProduct.compute(
+        blocks[a / BLOCK_ROWS], (a % BLOCK_ROWS) * dimensions, blocks[b / BLOCK_ROWS], (b % BLOCK_ROWS) * dimensions, dimensions);
+
+    // Exact scoring of every row only
+    public EmbeddingMatrix(int parallelism) {
+        this(parallelism, null);
+    }
+
+    // Approximate nearest-neighbour search over an HNSW graph when 'hnsw' is not null
+    public EmbeddingMatrix(int parallelism, HnswParams hnsw) {
+        if(parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        this.graph = hnsw == null ? null : new HnswGraph(hnsw);
+    }
+
+    // Every embedding must have the dimensions of the first one stored. A new row is linked into
+    // the graph; an overwritten row keeps the links chosen for its previous embedding, which stay
+    // a usable route to it as long as the embedding does not move far.
+    public void put(long canonicalDocId, float[] embedding) {
+        int id = Math.toIntExact(canonicalDocId);
+        float[] normalized = DotProduct.normalize(embedding);
+        lock.writeLock().lock();
+        try {
+            if(dimensions < 0) {
+                dimensions = normalized.length;
+            } else if(normalized.length != dimensions) {
+                throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + normalized.length
+                    + " for doc " + canonicalDocId);
+            }
+
+            Integer row = rows.get(id);
+            if(row != null) {
+                System.arraycopy(normalized, 0, blocks[row / BLOCK_ROWS], (row % BLOCK_ROWS) * dimensions, dimensions);
+            } else {
+                append(id, normalized);
+                if(graph != null) graph.insert(similarity);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putAll(Map<Long, float[]> embeddings) {
+        for(Map.Entry<Long, float[]> entry : embeddings.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The k rows most cosine-similar to 'query', best first as (canonical id, score); equal scores
+    // go to the lower canonical id. Approximate when there is a graph, searched with its efSearch.
+    // Once 'context' says stop, the best k seen so far are returned.
+    public List<ScoredDoc> topK(float[] query, int k, QueryContext context) {
+        lock.readLock().lock();
+        try {
+            if(graph != null) return search(query, k, graph.params().efSearch(), context);
+            return exactTopK(query, k, context);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // As topK over the graph, keeping 'efSearch' candidates (at least k) instead of the configured
+    // number, to trade recall for latency; exact without a graph
+    public List<ScoredDoc> topK(float[] query, int k, int efSearch, QueryContext context) {
+        lock.readLock().lock();
+        try {
+            if(graph != null) return search(query, k, efSearch, context);
+            return exactTopK(query, k, context);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<ScoredDoc> search(float[] query, int k, int efSearch, QueryContext context) {
+        if(size == 0) return List.of();
+        float[] normalized = normalizedQuery(query);
+        HnswGraph.NodeHeap nearest = graph.search(
+            row -> DotProduct.compute(normalized, 0, blocks[row / BLOCK_ROWS], (row % BLOCK_ROWS) * dimensions, dimensions),
+            Math.max(k, efSearch), context);
+        TopKCollector top = new TopKCollector(k);
+        while(nearest.size() > 0) {
+            float score = nearest.topScore();
+            top.collect(ids[nearest.pop()], score);
+        }
+        return top.toList(0);
+    }
+
+    private float[] normalizedQuery(float[] query) {
+        if(query.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + query.length);
+        }
+        return DotProduct.normalize(query);
+    }
+
+    // The exact top k, scoring every row whether or not there is a graph
+    public List<ScoredDoc> exactTopK(float[] query, int k, QueryContext context) {
+        lock.readLock().lock();
+        try {
+            if(size == 0) return List.of();
+            float[] normalized = normalizedQuery(query);
+
+            int blockCount = (size + BLOCK_ROWS - 1) / BLOCK_ROWS;
+            int tasks = pool == null || blockCount < PARALLEL_BLOCKS ? 1 : Math.min(parallelism, blockCount);
+            if(tasks == 1) {
+                return score(normalized, 0, blockCount, k, context).toList(0);
+            }
+
+            // Contiguous runs of blocks, one per task; the reader lock is held until all are done
+            List<Callable<TopKCollector>> slices = new ArrayList<>(tasks);
+            for(int t = 0; t < tasks; t++) {
+                int from = (int) ((long) blockCount * t / tasks);
+                int to = (int) ((long) blockCount * (t + 1) / tasks);
+                slices.add(() -> score(normalized, from, to, k, context));
+            }
+            TopKCollector top = new TopKCollector(k);
+            for(Future<TopKCollector> future : pool.invokeAll(slices)) {
+                TopKCollector slice = join(future);
+                for(int rank = 0; rank < slice.size(); rank++) {
+                    top.collect(slice.id(rank), slice.score(rank));
+                }
+            }
+            return top.toList(0);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Callers hold the reader lock
+    private TopKCollector score(float[] query, int fromBlock, int toBlock, int k, QueryContext context) {
+        TopKCollector top = new TopKCollector(k);
+        for(int b = fromBlock; b < toBlock; b++) {
+            if(context.shouldStop()) break;
+            float[] block = blocks[b];
+            int first = b * BLOCK_ROWS;
+            int count = Math.min(BLOCK_ROWS, size - first);
+            for(int r = 0; r < count; r++) {
+                top.collect(ids[first + r], DotProduct.compute(query, 0, block, r * dimensions, dimensions));
+            }
+        }
+        top.sort();
+        return top;
+    }
+
+    // Callers hold the writer lock
+    private void append(int id, float[] normalized) {
+        int row = size++;
+        grow(row);
+        ids[row] = id;
+        rows.put(id, row);
+        System.arraycopy(normalized, 0, blocks[row / BLOCK_ROWS], (row % BLOCK_ROWS) * dimensions, dimensions);
+    }
+
+    private void grow(int row) {
+        if(row >= ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(BLOCK_ROWS, ids.length * 2));
+        }
+        if(row / BLOCK_ROWS >= blocks.length) {
+            blocks = Arrays.copyOf(blocks, blocks.length + 1);
+            blocks[blocks.length - 1] = new float[BLOCK_ROWS * dimensions];
+        }
+    }
+
+    private static <T> T join(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException runtime) throw runtime;
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while scoring embeddings", e);
+        }
+    }
+
+    // Writes the rows' ids and the graph to 'path', through a temporary sibling so a crash never
+    // leaves a truncated file
+    public void saveGraph(Path path) throws IOException {
+        lock.readLock().lock();
+        try {
+            if(graph == null) {
+                throw new IllegalStateException("No HNSW graph to save");
+            }
+            Path directory = path.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path tmp = directory.resolve(path.getFileName() + ".tmp");
+
+            try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                CRC32C crc = new CRC32C();
+                DataOutputStream out = new DataOutputStream(new CheckedOutputStream(file, crc));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(dimensions);
+                out.writeInt(size);
+                for(int row = 0; row < size; row++) {
+                    out.writeInt(ids[row]);
+                }
+                graph.write(out);
+                out.flush();
+
+                DataOutputStream footer = new DataOutputStream(file);
+                footer.writeInt(FOOTER_MAGIC);
+                footer.writeLong(crc.getValue());
+                footer.flush();
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Fills an empty matrix from 'embeddings', reusing the graph saved at 'path' for the rows it
+    // covers and linking the rest in; returns how many rows were linked in. Throws, leaving the
+    // matrix empty, when the file is corrupt or names a document that no longer has an embedding;
+    // the caller then builds from scratch.
+    public int loadGraph(Path path, Map<Long, float[]> embeddings) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if(graph == null || size > 0) {
+                throw new IllegalStateException("Graphs load into an empty matrix with HNSW parameters");
+            }
+
+            int[] savedIds;
+            HnswGraph saved;
+            try (InputStream file = new BufferedInputStream(Files.newInputStream(path))) {
+                CRC32C crc = new CRC32C();
+                DataInputStream in = new DataInputStream(new CheckedInputStream(file, crc));
+                if(in.readInt() != MAGIC) throw corrupt(path, "bad magic");
+                int version = in.readInt();
+                if(version != VERSION) throw corrupt(path, "unsupported version " + version);
+                int savedDimensions = in.readInt();
+                int rowCount = in.readInt();
+                if(rowCount < 0) throw corrupt(path, "negative row count");
+                savedIds = new int[rowCount];
+                for(int row = 0; row < rowCount; row++) {
+                    savedIds[row] = in.readInt();
+                    float[] embedding = embeddings.get((long) savedIds[row]);
+                    if(embedding == null || embedding.length != savedDimensions) {
+                        throw corrupt(path, "stale row for doc " + savedIds[row]);
+                    }
+                }
+                saved = HnswGraph.read(in, graph.params(), rowCount);
+
+                long checksum = crc.getValue();
+                DataInputStream footer = new DataInputStream(file);
+                if(footer.readInt() != FOOTER_MAGIC) throw corrupt(path, "bad footer");
+                if(footer.readLong() != checksum) throw corrupt(path, "checksum mismatch");
+            } catch (RuntimeException e) {
+                throw corrupt(path, e.toString());
+            }
+
+            // Saved rows first, in their saved order, so they line up with the graph's nodes
+            for(int id : savedIds) {
+                float[] normalized = DotProduct.normalize(embeddings.get((long) id));
+                if(dimensions < 0) dimensions = normalized.length;
+                append(id, normalized);
+            }
+            graph = saved;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        int linked = 0;
+        for(Map.Entry<Long, float[]> entry : embeddings.entrySet()) {
+            if(!rows.containsKey(Math.toIntExact(entry.getKey()))) {
+                put(entry.getKey(), entry.getValue());
+                linked++;
+            }
+        }
+        return linked;
+    }
+
+    private static IOException corrupt(Path path, String reason) {
+        return new IOException("Corrupt HNSW graph file " + path + ": " + reason);
+    }
+
+    @Override
+    public void close() {
+        if(pool != null) pool.shutdown();
+    }
+}
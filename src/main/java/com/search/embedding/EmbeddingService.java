@@ -16,6 +16,7 @@ public class EmbeddingService {
         "https://generativelanguage.googleapis.com/v1beta/models/gemini-embedding-001:embedContent";
     private static final int DIMENSIONS = 768;
     private static final int MAX_WORDS = 1500;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
 
     private final String apiKey;
     private final HttpClient httpClient;
@@ -30,6 +31,11 @@ public class EmbeddingService {
     }
 
     public float[] embed(String text) {
+        return embed(text, REQUEST_TIMEOUT);
+    }
+
+    // 'timeout' bounds the whole request, e.g. to what is left of a query's deadline
+    public float[] embed(String text, Duration timeout) {
         String truncated = truncateToWords(text, MAX_WORDS);
 
         JsonObject part = new JsonObject();
@@ -50,7 +56,7 @@ public class EmbeddingService {
                 .uri(URI.create(ENDPOINT + "?key=" + apiKey))
                 .header("Content-Type", "application/json")
                 .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(body)))
-                .timeout(Duration.ofSeconds(60))
+                .timeout(timeout)
                 .build();
 
             HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
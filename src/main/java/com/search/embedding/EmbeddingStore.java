@@ -2,22 +2,47 @@ package com.search.embedding;
 
 import com.google.gson.Gson;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
-public class EmbeddingStore {
+// Embeddings live in canonical_documents as JSON arrays. Queries score against a resident
+// EmbeddingMatrix instead, read from the table once on first use and kept current by
+// storeEmbedding. With HNSW parameters the matrix's graph is restored from 'graphPath' when that
+// file is usable and saved back there on close if it changed.
+public class EmbeddingStore implements AutoCloseable {
 
     private final Connection connection;
     private final Gson gson = new Gson();
+    private final int parallelism;
+    private final HnswParams hnsw;
+    private final Path graphPath;
+    private EmbeddingMatrix matrix;
+    private boolean changed;
 
-    public EmbeddingStore(Connection connection) {
+    // Exact scoring only; 'parallelism' bounds the threads one query is scored with
+    public EmbeddingStore(Connection connection, int parallelism) {
+        this(connection, parallelism, null, null);
+    }
+
+    // HNSW search when 'hnsw' is not null, its graph kept at 'graphPath'
+    public EmbeddingStore(Connection connection, int parallelism, HnswParams hnsw, Path graphPath) {
         this.connection = connection;
+        this.parallelism = parallelism;
+        this.hnsw = hnsw;
+        this.graphPath = graphPath;
     }
 
+    // The row is written before the lock is taken, so queries are not held up by the database.
+    // Whichever way this races a first matrix() load, the matrix ends up with the embedding: the
+    // load either reads the committed row or is done by the time the put below runs.
     public void storeEmbedding(long canonicalDocId, float[] embedding) {
         String json = gson.toJson(embedding);
         try (PreparedStatement ps = connection.prepareStatement(
@@ -28,6 +53,34 @@ public class EmbeddingStore {
         } catch (SQLException e) {
             throw new RuntimeException("Failed to store embedding for doc " + canonicalDocId, e);
         }
+        synchronized (this) {
+            if (matrix != null) {
+                matrix.put(canonicalDocId, embedding);
+                changed = true;
+            }
+        }
+    }
+
+    public synchronized EmbeddingMatrix matrix() {
+        if (matrix == null) {
+            // In id order, so a rebuild links the same rows in the same order
+            Map<Long, float[]> embeddings = new TreeMap<>(getAllEmbeddings());
+            matrix = new EmbeddingMatrix(parallelism, hnsw);
+            changed = hnsw != null;
+            if (hnsw != null && Files.exists(graphPath)) {
+                try {
+                    changed = matrix.loadGraph(graphPath, embeddings) > 0;
+                } catch (IOException e) {
+                    System.err.println("Warning: rebuilding the HNSW graph: " + e.getMessage());
+                    matrix.close();
+                    matrix = new EmbeddingMatrix(parallelism, hnsw);
+                }
+            }
+            if (matrix.size() == 0) {
+                matrix.putAll(embeddings);
+            }
+        }
+        return matrix;
     }
 
     public float[] getEmbedding(long canonicalDocId) {
@@ -61,4 +114,17 @@ public class EmbeddingStore {
         }
         return result;
     }
+
+    @Override
+    public synchronized void close() {
+        if (matrix == null) return;
+        if (hnsw != null && changed) {
+            try {
+                matrix.saveGraph(graphPath);
+            } catch (IOException e) {
+                System.err.println("Warning: failed to save the HNSW graph to " + graphPath + ": " + e.getMessage());
+            }
+        }
+        matrix.close();
+    }
 }
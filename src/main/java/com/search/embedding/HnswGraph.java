@@ -0,0 +1,368 @@
+package com.search.embedding;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.search.index.QueryContext;
+
+// Hierarchical navigable small world graph (Malkov & Yashunin) over the rows of an EmbeddingMatrix:
+// node i is row i. Every node is on level 0 and each level up holds about 1/M of the nodes below
+// it. A search descends greedily from the entry point on the top level, then runs a best-first
+// search keeping the ef best nodes seen on level 0. Not thread-safe on its own: EmbeddingMatrix
+// runs searches under its reader lock and inserts under its writer lock.
+final class HnswGraph {
+
+    // Similarity (dot product of unit vectors, higher is closer) of the scored point to a node
+    interface Scorer {
+        float score(int node);
+    }
+
+    interface Similarity {
+        float between(int a, int b);
+    }
+
+    private static final int MAX_LEVEL = 16;
+
+    private final HnswParams params;
+    private final double levelFactor;
+    // Seeded, so inserting the same rows in the same order builds the same graph
+    private final Random random = new Random(42);
+    // links[node][level] = { count, neighbour... }
+    private int[][][] links = new int[0][][];
+    private int size;
+    private int entryPoint = -1;
+    private int topLevel = -1;
+    // Visited sets of finished searches, borrowed by the next ones. Searches often run on a fresh
+    // (virtual) thread each, so a thread-local set would be allocated and zeroed per query.
+    private final ConcurrentLinkedQueue<Visited> visitedPool = new ConcurrentLinkedQueue<>();
+
+    HnswGraph(HnswParams params) {
+        this.params = params;
+        this.levelFactor = 1 / Math.log(params.m());
+    }
+
+    HnswParams params() {
+        return params;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Links node 'size' (the next row) into the graph
+    void insert(Similarity similarity) {
+        int node = size;
+        int level = Math.min(MAX_LEVEL, (int) (-Math.log(1 - random.nextDouble()) * levelFactor));
+        if(node >= links.length) {
+            links = Arrays.copyOf(links, Math.max(1024, links.length * 2));
+        }
+        links[node] = new int[level + 1][];
+        for(int l = 0; l <= level; l++) {
+            links[node][l] = new int[1 + maxLinks(l)];
+        }
+        size++;
+
+        if(entryPoint < 0) {
+            entryPoint = node;
+            topLevel = level;
+            return;
+        }
+
+        Scorer scorer = other -> similarity.between(node, other);
+        int entry = entryPoint;
+        for(int l = topLevel; l > level; l--) {
+            entry = greedy(scorer, entry, l);
+        }
+        for(int l = Math.min(level, topLevel); l >= 0; l--) {
+            NodeHeap nearest = searchLevel(scorer, entry, params.efConstruction(), l, QueryContext.unbounded());
+            int count = nearest.size();
+            int[] candidates = new int[count];
+            float[] scores = new float[count];
+            // Popping the worst first fills the arrays best first from the back
+            for(int i = count - 1; i >= 0; i--) {
+                scores[i] = nearest.topScore();
+                candidates[i] = nearest.pop();
+            }
+            entry = candidates[0];
+
+            int[] own = links[node][l];
+            own[0] = selectDiverse(candidates, scores, count, params.m(), similarity, own);
+            for(int i = 1; i <= own[0]; i++) {
+                link(own[i], node, l, similarity);
+            }
+        }
+        if(level > topLevel) {
+            entryPoint = node;
+            topLevel = level;
+        }
+    }
+
+    // The up to 'ef' nodes found closest to the scored point, worst on top. Once 'context' says
+    // stop, the nodes found so far.
+    NodeHeap search(Scorer scorer, int ef, QueryContext context) {
+        if(entryPoint < 0) return new NodeHeap(0);
+        int entry = entryPoint;
+        for(int l = topLevel; l > 0; l--) {
+            entry = greedy(scorer, entry, l);
+        }
+        return searchLevel(scorer, entry, ef, 0, context);
+    }
+
+    private int maxLinks(int level) {
+        return level == 0 ? 2 * params.m() : params.m();
+    }
+
+    // Walks to ever closer neighbours on 'level' until none is closer
+    private int greedy(Scorer scorer, int entry, int level) {
+        int current = entry;
+        float best = scorer.score(current);
+        for(boolean moved = true; moved; ) {
+            moved = false;
+            int[] neighbours = links[current][level];
+            for(int i = 1; i <= neighbours[0]; i++) {
+                float score = scorer.score(neighbours[i]);
+                if(score > best) {
+                    best = score;
+                    current = neighbours[i];
+                    moved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    private NodeHeap searchLevel(Scorer scorer, int entry, int ef, int level, QueryContext context) {
+        Visited seen = visitedPool.poll();
+        if(seen == null) seen = new Visited();
+        try {
+            return searchLevel(scorer, entry, ef, level, context, seen);
+        } finally {
+            visitedPool.offer(seen);
+        }
+    }
+
+    private NodeHeap searchLevel(Scorer scorer, int entry, int ef, int level, QueryContext context, Visited seen) {
+        seen.reset(size);
+        // Candidates to expand, closest on top (scores negated); results, worst on top
+        NodeHeap candidates = new NodeHeap(ef);
+        NodeHeap results = new NodeHeap(ef);
+        float entryScore = scorer.score(entry);
+        seen.add(entry);
+        candidates.push(entry, -entryScore);
+        results.push(entry, entryScore);
+
+        int work = 0;
+        while(candidates.size() > 0) {
+            float closest = -candidates.topScore();
+            int node = candidates.pop();
+            if(results.size() >= ef && closest < results.topScore()) break;
+
+            int[] neighbours = links[node][level];
+            for(int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if(!seen.add(neighbour)) continue;
+                float score = scorer.score(neighbour);
+                if(results.size() < ef || score > results.topScore()) {
+                    candidates.push(neighbour, -score);
+                    results.push(neighbour, score);
+                    if(results.size() > ef) results.pop();
+                }
+            }
+            if((work += neighbours[0]) >= QueryContext.CHECK_INTERVAL) {
+                if(context.shouldStop()) break;
+                work = 0;
+            }
+        }
+        return results;
+    }
+
+    // Keeps a candidate (best first) only when it is closer to the node than to every neighbour
+    // kept so far, so links spread out in all directions instead of bunching up in the nearest
+    // cluster. Writes up to 'max' kept ids to out[1..] and returns their number.
+    private static int selectDiverse(int[] candidates, float[] scores, int count, int max,
+                                     Similarity similarity, int[] out) {
+        int kept = 0;
+        for(int i = 0; i < count && kept < max; i++) {
+            boolean diverse = true;
+            for(int j = 1; j <= kept && diverse; j++) {
+                diverse = similarity.between(candidates[i], out[j]) <= scores[i];
+            }
+            if(diverse) out[++kept] = candidates[i];
+        }
+        return kept;
+    }
+
+    // Adds the link node -> target, re-selecting the node's neighbours when it has too many
+    private void link(int node, int target, int level, Similarity similarity) {
+        int[] neighbours = links[node][level];
+        int count = neighbours[0];
+        if(count < neighbours.length - 1) {
+            neighbours[++count] = target;
+            neighbours[0] = count;
+            return;
+        }
+
+        int[] candidates = new int[count + 1];
+        float[] scores = new float[count + 1];
+        System.arraycopy(neighbours, 1, candidates, 0, count);
+        candidates[count] = target;
+        for(int i = 0; i <= count; i++) {
+            scores[i] = similarity.between(node, candidates[i]);
+        }
+        sortDescending(candidates, scores);
+        neighbours[0] = selectDiverse(candidates, scores, candidates.length, neighbours.length - 1, similarity, neighbours);
+    }
+
+    // Insertion sort; neighbour lists are at most 2M + 1 long
+    private static void sortDescending(int[] ids, float[] scores) {
+        for(int i = 1; i < ids.length; i++) {
+            int id = ids[i];
+            float score = scores[i];
+            int j = i - 1;
+            for(; j >= 0 && scores[j] < score; j--) {
+                ids[j + 1] = ids[j];
+                scores[j + 1] = scores[j];
+            }
+            ids[j + 1] = id;
+            scores[j + 1] = score;
+        }
+    }
+
+    // Parameters, entry point, then each node's levels and neighbour lists
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(params.m());
+        out.writeInt(params.efConstruction());
+        out.writeInt(size);
+        out.writeInt(entryPoint);
+        out.writeInt(topLevel);
+        for(int node = 0; node < size; node++) {
+            int[][] levels = links[node];
+            out.writeByte(levels.length - 1);
+            for(int[] neighbours : levels) {
+                out.writeShort(neighbours[0]);
+                for(int i = 1; i <= neighbours[0]; i++) {
+                    out.writeInt(neighbours[i]);
+                }
+            }
+        }
+    }
+
+    // Reads a graph written by write(); 'efSearch' comes from 'params', the rest from the stream
+    static HnswGraph read(DataInputStream in, HnswParams params, int rows) throws IOException {
+        HnswParams stored = new HnswParams(in.readInt(), in.readInt(), params.efSearch());
+        HnswGraph graph = new HnswGraph(stored);
+        int size = in.readInt();
+        if(size != rows) {
+            throw new IOException("Graph has " + size + " nodes for " + rows + " rows");
+        }
+        graph.entryPoint = in.readInt();
+        graph.topLevel = in.readInt();
+        graph.links = new int[Math.max(1024, size)][][];
+        for(int node = 0; node < size; node++) {
+            int level = in.readUnsignedByte();
+            if(level > MAX_LEVEL) throw new IOException("Node " + node + " has level " + level);
+            int[][] levels = new int[level + 1][];
+            for(int l = 0; l <= level; l++) {
+                int count = in.readUnsignedShort();
+                if(count > graph.maxLinks(l)) throw new IOException("Node " + node + " has " + count + " links on level " + l);
+                int[] neighbours = new int[1 + graph.maxLinks(l)];
+                neighbours[0] = count;
+                for(int i = 1; i <= count; i++) {
+                    neighbours[i] = in.readInt();
+                    if(neighbours[i] < 0 || neighbours[i] >= size) throw new IOException("Node " + node + " links to " + neighbours[i]);
+                }
+                levels[l] = neighbours;
+            }
+            graph.links[node] = levels;
+        }
+        if(size > 0 && (graph.entryPoint < 0 || graph.entryPoint >= size || graph.links[graph.entryPoint].length != graph.topLevel + 1)) {
+            throw new IOException("Bad entry point " + graph.entryPoint);
+        }
+        graph.size = size;
+        return graph;
+    }
+
+    // Binary min-heap of (node, score) on score
+    static final class NodeHeap {
+        private int[] nodes;
+        private float[] scores;
+        private int size;
+
+        NodeHeap(int capacity) {
+            nodes = new int[Math.max(1, capacity + 1)];
+            scores = new float[nodes.length];
+        }
+
+        int size() {
+            return size;
+        }
+
+        float topScore() {
+            return scores[0];
+        }
+
+        void push(int node, float score) {
+            if(size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            while(i > 0) {
+                int parent = (i - 1) >>> 1;
+                if(scores[parent] <= score) break;
+                nodes[i] = nodes[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+        }
+
+        // Removes the lowest-scored entry and returns its node
+        int pop() {
+            int top = nodes[0];
+            int lastNode = nodes[--size];
+            float lastScore = scores[size];
+            int i = 0;
+            while(true) {
+                int child = 2 * i + 1;
+                if(child >= size) break;
+                if(child + 1 < size && scores[child + 1] < scores[child]) child++;
+                if(scores[child] >= lastScore) break;
+                nodes[i] = nodes[child];
+                scores[i] = scores[child];
+                i = child;
+            }
+            nodes[i] = lastNode;
+            scores[i] = lastScore;
+            return top;
+        }
+    }
+
+    // Nodes seen by the current search, cleared in O(1) by bumping the epoch
+    private static final class Visited {
+        private int[] marks = new int[0];
+        private int epoch;
+
+        void reset(int nodes) {
+            if(marks.length < nodes) {
+                marks = new int[Math.max(nodes, marks.length * 2)];
+                epoch = 0;
+            }
+            if(++epoch == 0) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        boolean add(int node) {
+            if(marks[node] == epoch) return false;
+            marks[node] = epoch;
+            return true;
+        }
+    }
+}
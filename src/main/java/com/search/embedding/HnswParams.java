@@ -0,0 +1,15 @@
+package com.search.embedding;
+
+// m: links per node on the upper levels (2m on level 0); efConstruction: candidates kept while
+// linking a new node; efSearch: candidates kept while searching, at least k. Larger values buy
+// recall with build time, memory and query latency.
+public record HnswParams(int m, int efConstruction, int efSearch) {
+    public HnswParams {
+        if(m < 2) {
+            throw new IllegalArgumentException("m must be at least 2: " + m);
+        }
+        if(efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException("ef must be positive: efConstruction=" + efConstruction + ", efSearch=" + efSearch);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.search.index;
+
+// Iterates doc ids in ascending order.
+// docId() is -1 before the first nextDoc()/advance() and NO_MORE_DOCS once exhausted.
+public interface DocIdIterator {
+    int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    int docId();
+    int nextDoc();
+
+    // Moves to the first doc >= target; never moves backwards
+    int advance(int target);
+
+    // Upper bound on the number of docs this iterator can return
+    int cost();
+}
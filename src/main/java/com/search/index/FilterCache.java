@@ -0,0 +1,114 @@
+package com.search.index;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Byte-weighted LRU cache of the doc id sets of dense, frequently queried terms, keyed by segment
+// and term. A term is eligible once it covers at least 1/MIN_DENSITY of its segment; it is admitted
+// on its ADMIT_AFTER-th request, so one-off queries never displace the hot head. Conjunctions
+// intersect the cached sets up front instead of decoding every dense postings list.
+public final class FilterCache {
+
+    public record Stats(long hits, long misses, long admissions, long evictions, int entries, long bytes, long maxBytes) {
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+    }
+
+    private record Key(int segmentId, int termId) {}
+
+    private static final int MIN_DOC_FREQ = 64;
+    private static final int MIN_DENSITY = 32;
+    private static final int ADMIT_AFTER = 2;
+    // Every tracked term has been requested once since the last reset (the ADMIT_AFTER-th request
+    // admits it and drops its count), so there is no popularity to decay: once this many are
+    // tracked they are all forgotten, bounding the table
+    private static final int MAX_TRACKED = 1 << 16;
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, RoaringDocIdSet> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, Integer> requests = new HashMap<>();
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long admissions;
+    private long evictions;
+
+    public FilterCache(long maxBytes) {
+        if(maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    // Intersection of the cached sets among termIds, or null when fewer than two are available:
+    // a lone set narrows nothing its own postings would not. Builds the sets of terms that have
+    // just been admitted; ids of -1 are skipped.
+    public RoaringDocIdSet filter(int segmentId, IndexReader index, int[] termIds, int totalDocs) {
+        RoaringDocIdSet filter = null;
+        int sets = 0;
+        for(int termId : termIds) {
+            if(termId < 0) continue;
+            int docFreq = index.docFreq(termId);
+            if(docFreq < MIN_DOC_FREQ || (long) docFreq * MIN_DENSITY < totalDocs) continue;
+
+            RoaringDocIdSet docs = get(new Key(segmentId, termId), index);
+            if(docs == null) continue;
+            filter = filter == null ? docs : filter.and(docs);
+            sets++;
+        }
+        return sets >= 2 ? filter : null;
+    }
+
+    // Builds outside the lock; racing builds of one term are harmless because a sealed segment's
+    // postings never change
+    private RoaringDocIdSet get(Key key, IndexReader index) {
+        synchronized (this) {
+            RoaringDocIdSet cached = entries.get(key);
+            if(cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+            if(requests.merge(key, 1, Integer::sum) < ADMIT_AFTER) {
+                if(requests.size() > MAX_TRACKED) requests.clear();
+                return null;
+            }
+            requests.remove(key);
+        }
+
+        RoaringDocIdSet docs = RoaringDocIdSet.of(index.postings(key.termId()));
+        long weight = docs.sizeInBytes();
+        if(weight > maxBytes) return docs;
+
+        synchronized (this) {
+            RoaringDocIdSet previous = entries.put(key, docs);
+            if(previous != null) {
+                bytes -= previous.sizeInBytes();
+            }
+            bytes += weight;
+            admissions++;
+
+            Iterator<RoaringDocIdSet> eldest = entries.values().iterator();
+            while(bytes > maxBytes) {
+                bytes -= eldest.next().sizeInBytes();
+                eldest.remove();
+                evictions++;
+            }
+        }
+        return docs;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        requests.clear();
+        bytes = 0;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, admissions, evictions, entries.size(), bytes, maxBytes);
+    }
+}
@@ -0,0 +1,148 @@
+package com.search.index;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Immutable sorted term dictionary, front coded: terms are grouped in blocks of BLOCK_SIZE; the
+// first term of a block is stored whole and every other one as (length of the prefix shared with
+// its predecessor, remaining suffix). Lookups binary search the block heads and then decode at
+// most one block. A term's ordinal is its rank in UTF-8 byte order.
+public final class FrontCodedTerms {
+    private static final int BLOCK_SIZE = 16;
+
+    private final int size;
+    private final byte[] data;
+    // Start of every block in data
+    private final int[] blocks;
+
+    private FrontCodedTerms(int size, byte[] data, int[] blocks) {
+        this.size = size;
+        this.data = data;
+        this.blocks = blocks;
+    }
+
+    // 'terms' need not be sorted; duplicates are kept
+    public static FrontCodedTerms of(String[] terms) {
+        byte[][] sorted = new byte[terms.length][];
+        for(int i = 0; i < terms.length; i++) {
+            sorted[i] = terms[i].getBytes(StandardCharsets.UTF_8);
+        }
+        Arrays.sort(sorted, Arrays::compareUnsigned);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] blocks = new int[(sorted.length + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        for(int i = 0; i < sorted.length; i++) {
+            byte[] term = sorted[i];
+            int shared = 0;
+            if(i % BLOCK_SIZE == 0) {
+                blocks[i / BLOCK_SIZE] = out.size();
+            } else {
+                shared = Arrays.mismatch(sorted[i - 1], term);
+                if(shared < 0) shared = term.length;
+                writeVInt(out, shared);
+            }
+            writeVInt(out, term.length - shared);
+            out.write(term, shared, term.length - shared);
+        }
+        return new FrontCodedTerms(sorted.length, out.toByteArray(), blocks);
+    }
+
+    public int size() { return size; }
+
+    public long sizeInBytes() {
+        return data.length + 4L * blocks.length;
+    }
+
+    public String term(int ordinal) {
+        if(ordinal < 0 || ordinal >= size) {
+            throw new IndexOutOfBoundsException("Term ordinal " + ordinal + " of " + size);
+        }
+        Cursor cursor = new Cursor(ordinal / BLOCK_SIZE);
+        for(int i = ordinal % BLOCK_SIZE; i > 0; i--) {
+            cursor.next();
+        }
+        return cursor.term();
+    }
+
+    // Returns -1 when the term is absent
+    public int ordinal(String term) {
+        int ceiling = ceiling(term);
+        return ceiling < size && term(ceiling).equals(term) ? ceiling : -1;
+    }
+
+    // Ordinal of the first term >= 'term' in UTF-8 byte order, size() when there is none
+    public int ceiling(String term) {
+        if(size == 0) return 0;
+        byte[] key = term.getBytes(StandardCharsets.UTF_8);
+
+        // Last block whose head is <= key
+        int lo = 0;
+        int hi = blocks.length - 1;
+        while(lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if(new Cursor(mid).compareTo(key) <= 0) lo = mid;
+            else hi = mid - 1;
+        }
+
+        Cursor cursor = new Cursor(lo);
+        int ordinal = lo * BLOCK_SIZE;
+        int end = Math.min(size, ordinal + BLOCK_SIZE);
+        while(cursor.compareTo(key) < 0) {
+            if(++ordinal == end) return ordinal;
+            cursor.next();
+        }
+        return ordinal;
+    }
+
+    // Decodes the terms of one block in order into a reusable buffer
+    private final class Cursor {
+        private int pointer;
+        private byte[] buffer = new byte[32];
+        private int length;
+
+        Cursor(int block) {
+            this.pointer = blocks[block];
+            read(0);
+        }
+
+        void next() {
+            read(readVInt());
+        }
+
+        private void read(int shared) {
+            int suffix = readVInt();
+            length = shared + suffix;
+            if(length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(length, buffer.length * 2));
+            }
+            System.arraycopy(data, pointer, buffer, shared, suffix);
+            pointer += suffix;
+        }
+
+        int compareTo(byte[] key) {
+            return Arrays.compareUnsigned(buffer, 0, length, key, 0, key.length);
+        }
+
+        String term() {
+            return new String(buffer, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private int readVInt() {
+            int value = 0;
+            for(int shift = 0; ; shift += 7) {
+                byte b = data[pointer++];
+                value |= (b & 0x7F) << shift;
+                if(b >= 0) return value;
+            }
+        }
+    }
+
+    private static void writeVInt(ByteArrayOutputStream out, int value) {
+        while((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
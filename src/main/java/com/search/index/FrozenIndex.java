@@ -0,0 +1,438 @@
+package com.search.index;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.search.index.codec.BytesWriter;
+import com.search.index.codec.PostingsCodec;
+import com.search.index.codec.PostingsCodecs;
+
+// Read-optimized form of a sealed segment's index. Every structure lives in a ByteBuffer read
+// at absolute positions, so the same code serves heap buffers and a mapped SegmentFile.
+//
+// Terms form a dictionary sorted by UTF-8 bytes; a term's id is its rank in that dictionary.
+// termIndex holds termCount + 1 start offsets into termBytes, and termTable holds one
+// TERM_ENTRY_BYTES entry per term: df, max tf, postings pointer, occurrences pointer.
+//
+// Each term's postings are encoded with a PostingsCodec as blocks of BLOCK_SIZE docs
+// ([doc-id gaps][term frequencies]). Terms with more than one block are preceded by a skip
+// table holding, per block, its last doc id, its offset from the first block, the offset of
+// its first (position gaps, offset gaps) chunk in the occurrences buffer and its max term
+// frequency. advance() searches that table instead of decoding the blocks in between;
+// advanceShallow() uses it to bound scores without decoding at all.
+//
+// Norms hold every doc's length in tokens, summed from the term frequencies while freezing.
+public final class FrozenIndex implements IndexReader {
+    static final int BLOCK_SIZE = 128;
+    static final int TERM_ENTRY_BYTES = 4 * Integer.BYTES;
+    private static final int SKIP_ENTRY_BYTES = 4 * Integer.BYTES;
+
+    private final PostingsCodec codec;
+    private final int termCount;
+    private final ByteBuffer termIndex;
+    private final ByteBuffer termBytes;
+    private final ByteBuffer termTable;
+    private final ByteBuffer postings;
+    private final ByteBuffer occurrences;
+    private final Norms norms;
+
+    FrozenIndex(PostingsCodec codec, int termCount, ByteBuffer termIndex, ByteBuffer termBytes,
+                ByteBuffer termTable, ByteBuffer postings, ByteBuffer occurrences, ByteBuffer norms) {
+        this.codec = codec;
+        this.termCount = termCount;
+        this.termIndex = termIndex;
+        this.termBytes = termBytes;
+        this.termTable = termTable;
+        this.postings = postings;
+        this.occurrences = occurrences;
+        this.norms = new Norms(norms);
+    }
+
+    public static FrozenIndex freeze(InvertedIndex source) {
+        return freeze(source, PostingsCodecs.getDefault());
+    }
+
+    public static FrozenIndex freeze(InvertedIndex source, PostingsCodec codec) {
+        return freeze(source, codec, true);
+    }
+
+    // Without norms the index reports Norms.empty(); for callers that keep norms elsewhere, such
+    // as LazyIndex's single-term postings
+    public static FrozenIndex freeze(InvertedIndex source, PostingsCodec codec, boolean withNorms) {
+        Map<String, Map<Integer, Posting>> index = source.getIndex();
+        byte[][] sortedTerms = index.keySet().stream()
+            .map(term -> term.getBytes(StandardCharsets.UTF_8))
+            .sorted(Arrays::compareUnsigned)
+            .toArray(byte[][]::new);
+
+        BytesWriter termIndexOut = new BytesWriter(4 * (sortedTerms.length + 1));
+        BytesWriter termBytesOut = new BytesWriter();
+        BytesWriter termTableOut = new BytesWriter(TERM_ENTRY_BYTES * sortedTerms.length);
+        BytesWriter postingsOut = new BytesWriter();
+        BytesWriter occurrencesOut = new BytesWriter();
+        BytesWriter blocksOut = new BytesWriter();
+
+        int[] docGaps = new int[BLOCK_SIZE];
+        int[] termFrequencies = new int[BLOCK_SIZE];
+        int[] positions = new int[16];
+        int[] offsets = new int[16];
+        int[] docLengths = new int[16];
+
+        for(byte[] term : sortedTerms) {
+            termIndexOut.writeInt(termBytesOut.size());
+            termBytesOut.writeBytes(term);
+
+            Map<Integer, Posting> termPostings = index.get(new String(term, StandardCharsets.UTF_8));
+            int[] sortedDocs = termPostings.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+            int blockCount = blockCount(sortedDocs.length);
+            int postingsPointer = postingsOut.size();
+            int occurrencePointer = occurrencesOut.size();
+            int maxTf = 0;
+            blocksOut.reset();
+
+            int previousDoc = 0;
+            for(int blockStart = 0; blockStart < sortedDocs.length; blockStart += BLOCK_SIZE) {
+                int blockLength = Math.min(BLOCK_SIZE, sortedDocs.length - blockStart);
+                int blockOffset = blocksOut.size();
+                int occurrenceOffset = occurrencesOut.size() - occurrencePointer;
+                int blockMaxTf = 0;
+
+                for(int i = 0; i < blockLength; i++) {
+                    int docId = sortedDocs[blockStart + i];
+                    Posting posting = termPostings.get(docId);
+                    int tf = posting.getTermFrequency();
+
+                    docGaps[i] = docId - previousDoc;
+                    termFrequencies[i] = tf;
+                    previousDoc = docId;
+                    blockMaxTf = Math.max(blockMaxTf, tf);
+
+                    if(withNorms) {
+                        if(docId >= docLengths.length) {
+                            docLengths = Arrays.copyOf(docLengths, Math.max(docId + 1, 2 * docLengths.length));
+                        }
+                        docLengths[docId] += tf;
+                    }
+
+                    if(tf > positions.length) {
+                        positions = new int[tf];
+                        offsets = new int[tf];
+                    }
+                    OccurrenceIterator it = posting.occurrences();
+                    while(it.next()) {
+                        positions[it.index()] = it.position();
+                        offsets[it.index()] = it.offset();
+                    }
+                    PostingsCodecs.writeOccurrences(codec, positions, offsets, tf, occurrencesOut);
+                }
+
+                codec.encode(docGaps, 0, blockLength, blocksOut);
+                codec.encode(termFrequencies, 0, blockLength, blocksOut);
+
+                if(blockCount > 1) {
+                    postingsOut.writeInt(previousDoc);
+                    postingsOut.writeInt(blockOffset);
+                    postingsOut.writeInt(occurrenceOffset);
+                    postingsOut.writeInt(blockMaxTf);
+                }
+                maxTf = Math.max(maxTf, blockMaxTf);
+            }
+            postingsOut.writeBytes(blocksOut);
+
+            termTableOut.writeInt(sortedDocs.length);
+            termTableOut.writeInt(maxTf);
+            termTableOut.writeInt(postingsPointer);
+            termTableOut.writeInt(occurrencePointer);
+        }
+        termIndexOut.writeInt(termBytesOut.size());
+
+        return new FrozenIndex(codec, sortedTerms.length,
+            ByteBuffer.wrap(termIndexOut.toByteArray()),
+            ByteBuffer.wrap(termBytesOut.toByteArray()),
+            ByteBuffer.wrap(termTableOut.toByteArray()),
+            ByteBuffer.wrap(postingsOut.toByteArray()),
+            ByteBuffer.wrap(occurrencesOut.toByteArray()),
+            withNorms ? Norms.fromLengths(Arrays.copyOf(docLengths, maxDocId(index) + 1)).buffer()
+                      : Norms.empty().buffer());
+    }
+
+    private static int maxDocId(Map<String, Map<Integer, Posting>> index) {
+        int maxDocId = -1;
+        for(Map<Integer, Posting> termPostings : index.values()) {
+            for(int docId : termPostings.keySet()) {
+                maxDocId = Math.max(maxDocId, docId);
+            }
+        }
+        return maxDocId;
+    }
+
+    private static int blockCount(int docFreq) {
+        return (docFreq + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    public PostingsCodec getCodec() { return codec; }
+
+    // Encoded size of postings, occurrences and norms, excluding the term dictionary
+    public long encodedBytes() {
+        return (long) postings.capacity() + occurrences.capacity() + norms.buffer().capacity();
+    }
+
+    // Sections in SegmentFile order
+    ByteBuffer[] sections() {
+        return new ByteBuffer[] { termIndex, termBytes, termTable, postings, occurrences, norms.buffer() };
+    }
+
+    @Override
+    public int termCount() { return termCount; }
+
+    @Override
+    public String term(int termId) {
+        int start = termIndex.getInt(termId * Integer.BYTES);
+        byte[] bytes = new byte[termIndex.getInt((termId + 1) * Integer.BYTES) - start];
+        termBytes.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int termId(String term) {
+        byte[] key = term.getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = termCount - 1;
+        while(lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareTerm(mid, key);
+            if(cmp < 0) lo = mid + 1;
+            else if(cmp > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    @Override
+    public int ceilingTermId(String term) {
+        byte[] key = term.getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = termCount;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(compareTerm(mid, key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int compareTerm(int termId, byte[] key) {
+        int start = termIndex.getInt(termId * Integer.BYTES);
+        int length = termIndex.getInt((termId + 1) * Integer.BYTES) - start;
+        int common = Math.min(length, key.length);
+        for(int i = 0; i < common; i++) {
+            int cmp = Byte.compareUnsigned(termBytes.get(start + i), key[i]);
+            if(cmp != 0) return cmp;
+        }
+        return length - key.length;
+    }
+
+    @Override
+    public Norms norms() { return norms; }
+
+    @Override
+    public int docFreq(int termId) {
+        return termTable.getInt(termId * TERM_ENTRY_BYTES);
+    }
+
+    @Override
+    public PostingsIterator postings(int termId) {
+        return new BlockPostingsIterator(termId);
+    }
+
+    private final class BlockPostingsIterator implements PostingsIterator {
+        private final int docFreq;
+        private final int blockCount;
+        private final int skipPointer;
+        private final int blocksPointer;
+        private final int occurrenceBase;
+        private final int[] docBuffer = new int[BLOCK_SIZE];
+        private final int[] tfBuffer = new int[BLOCK_SIZE];
+
+        private final int maxTermFrequency;
+
+        private int block = -1;
+        private int blockLength;
+        private int shallowMaxTf;
+        private int index = -1;
+        private int docId = -1;
+
+        // Occurrence chunk of docBuffer[occurrenceIndex] starts at occurrencePointer
+        private int occurrenceIndex;
+        private int occurrencePointer;
+        private int[] positions = new int[16];
+        private int[] offsets = new int[16];
+
+        BlockPostingsIterator(int termId) {
+            int entry = termId * TERM_ENTRY_BYTES;
+            this.docFreq = termTable.getInt(entry);
+            this.maxTermFrequency = termTable.getInt(entry + Integer.BYTES);
+            this.blockCount = blockCount(docFreq);
+            this.skipPointer = termTable.getInt(entry + 2 * Integer.BYTES);
+            this.blocksPointer = skipPointer + (blockCount > 1 ? blockCount * SKIP_ENTRY_BYTES : 0);
+            this.occurrenceBase = termTable.getInt(entry + 3 * Integer.BYTES);
+        }
+
+        @Override
+        public int docId() { return docId; }
+
+        @Override
+        public int nextDoc() {
+            if(++index >= blockLength) {
+                if(block + 1 >= blockCount) {
+                    return exhaust();
+                }
+                loadBlock(block + 1);
+                index = 0;
+            }
+            return docId = docBuffer[index];
+        }
+
+        @Override
+        public int advance(int target) {
+            if(docId >= target) return docId;
+
+            int from = index + 1;
+            if(block < 0 || docBuffer[blockLength - 1] < target) {
+                int next = block + 1;
+                if(blockCount > 1) {
+                    next = findBlock(next, target);
+                }
+                if(next >= blockCount) {
+                    return exhaust();
+                }
+                loadBlock(next);
+                from = 0;
+                if(docBuffer[blockLength - 1] < target) {
+                    return exhaust();
+                }
+            }
+
+            index = gallop(from, target);
+            return docId = docBuffer[index];
+        }
+
+        // First block at or after 'from' whose last doc is >= target, or blockCount if none
+        private int findBlock(int from, int target) {
+            int lo = from;
+            int hi = from;
+            for(int step = 1; hi < blockCount && lastDoc(hi) < target; step <<= 1) {
+                lo = hi + 1;
+                hi = lo + step;
+            }
+            hi = Math.min(hi, blockCount);
+            while(lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if(lastDoc(mid) < target) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        // First index at or after 'from' in the current block holding a doc >= target.
+        // Callers guarantee the block's last doc is >= target.
+        private int gallop(int from, int target) {
+            int lo = from;
+            int hi = from;
+            for(int step = 1; hi < blockLength && docBuffer[hi] < target; step <<= 1) {
+                lo = hi + 1;
+                hi = lo + step;
+            }
+            hi = Math.min(hi, blockLength - 1);
+            while(lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if(docBuffer[mid] < target) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        @Override
+        public int advanceShallow(int target) {
+            if(blockCount <= 1) {
+                shallowMaxTf = maxTermFrequency;
+                return NO_MORE_DOCS - 1;
+            }
+            int b = findBlock(Math.max(block, 0), target);
+            if(b >= blockCount) {
+                shallowMaxTf = 0;
+                return NO_MORE_DOCS;
+            }
+            shallowMaxTf = postings.getInt(skipPointer + b * SKIP_ENTRY_BYTES + 3 * Integer.BYTES);
+            return lastDoc(b);
+        }
+
+        @Override
+        public int blockMaxTermFrequency() { return shallowMaxTf; }
+
+        @Override
+        public int maxTermFrequency() { return maxTermFrequency; }
+
+        private int lastDoc(int b) {
+            return postings.getInt(skipPointer + b * SKIP_ENTRY_BYTES);
+        }
+
+        private void loadBlock(int b) {
+            int pointer = blocksPointer;
+            int previousDoc = 0;
+            occurrencePointer = occurrenceBase;
+            if(b > 0) {
+                int entry = skipPointer + b * SKIP_ENTRY_BYTES;
+                previousDoc = postings.getInt(entry - SKIP_ENTRY_BYTES);
+                pointer += postings.getInt(entry + Integer.BYTES);
+                occurrencePointer += postings.getInt(entry + 2 * Integer.BYTES);
+            }
+            occurrenceIndex = 0;
+
+            block = b;
+            blockLength = Math.min(BLOCK_SIZE, docFreq - b * BLOCK_SIZE);
+            pointer = codec.decode(postings, pointer, docBuffer, blockLength);
+            codec.decode(postings, pointer, tfBuffer, blockLength);
+
+            docBuffer[0] += previousDoc;
+            for(int i = 1; i < blockLength; i++) {
+                docBuffer[i] += docBuffer[i - 1];
+            }
+        }
+
+        private int exhaust() {
+            block = blockCount;
+            index = blockLength;
+            return docId = NO_MORE_DOCS;
+        }
+
+        @Override
+        public int termFrequency() { return tfBuffer[index]; }
+
+        // The returned iterator shares this iterator's scratch buffers and is only valid
+        // until occurrences() is called again.
+        @Override
+        public OccurrenceIterator occurrences() {
+            while(occurrenceIndex < index) {
+                int tf = tfBuffer[occurrenceIndex++];
+                occurrencePointer = codec.skip(occurrences, codec.skip(occurrences, occurrencePointer, tf), tf);
+            }
+
+            int tf = tfBuffer[index];
+            if(tf > positions.length) {
+                positions = new int[tf];
+                offsets = new int[tf];
+            }
+            if(occurrenceIndex == index) {
+                occurrencePointer = PostingsCodecs.readOccurrences(codec, occurrences, occurrencePointer, positions, offsets, tf);
+                occurrenceIndex++;
+            }
+            return new OccurrenceIterator(positions, offsets, tf);
+        }
+
+        @Override
+        public int cost() { return docFreq; }
+    }
+}
@@ -0,0 +1,30 @@
+package com.search.index;
+
+public interface IndexReader {
+    int termCount();
+    String term(int termId);
+
+    // Returns -1 when the term does not occur in this index
+    int termId(String term);
+
+    // Term ids are ranks in a dictionary sorted by UTF-8 bytes: this is the id of the first term
+    // >= 'term', termCount() if there is none. The terms sharing a prefix form a contiguous range
+    // starting at ceilingTermId(prefix).
+    int ceilingTermId(String term);
+
+    int docFreq(int termId);
+    PostingsIterator postings(int termId);
+
+    // Per-doc lengths in tokens, for length-normalized scoring
+    Norms norms();
+
+    default int docFreq(String term) {
+        int termId = termId(term);
+        return termId < 0 ? 0 : docFreq(termId);
+    }
+
+    default PostingsIterator postings(String term) {
+        int termId = termId(term);
+        return termId < 0 ? PostingsIterator.empty() : postings(termId);
+    }
+}
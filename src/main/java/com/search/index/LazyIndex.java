@@ -0,0 +1,59 @@
+package com.search.index;
+
+import java.util.Map;
+import java.util.function.Function;
+
+import com.search.index.codec.PostingsCodecs;
+
+// Index that keeps only its dictionary (terms and document frequencies) resident. A term's
+// postings are fetched the first time a query asks for them and then live in a shared
+// PostingsCache until evicted. The dictionary is front coded, so a segment's resident terms cost
+// a fraction of their String form.
+public final class LazyIndex implements IndexReader {
+    private final int segmentId;
+    private final FrontCodedTerms terms;
+    private final int[] docFreqs;
+    private final Norms norms;
+    private final Function<String, InvertedIndex> loader;
+    private final PostingsCache cache;
+
+    // loader returns an index holding the postings of the given term only
+    public LazyIndex(int segmentId, Map<String, Integer> dictionary, Norms norms,
+                     Function<String, InvertedIndex> loader, PostingsCache cache) {
+        this.segmentId = segmentId;
+        this.terms = FrontCodedTerms.of(dictionary.keySet().toArray(String[]::new));
+        this.docFreqs = new int[terms.size()];
+        for(int i = 0; i < docFreqs.length; i++) {
+            docFreqs[i] = dictionary.get(terms.term(i));
+        }
+        this.norms = norms;
+        this.loader = loader;
+        this.cache = cache;
+    }
+
+    @Override
+    public int termCount() { return terms.size(); }
+
+    @Override
+    public String term(int termId) { return terms.term(termId); }
+
+    @Override
+    public int termId(String term) { return terms.ordinal(term); }
+
+    @Override
+    public int ceilingTermId(String term) { return terms.ceiling(term); }
+
+    @Override
+    public int docFreq(int termId) { return docFreqs[termId]; }
+
+    @Override
+    public Norms norms() { return norms; }
+
+    @Override
+    public PostingsIterator postings(int termId) {
+        // norms() serves the segment's norms, so cached postings carry none of their own
+        FrozenIndex single = cache.get(segmentId, termId,
+            id -> FrozenIndex.freeze(loader.apply(terms.term(id)), PostingsCodecs.getDefault(), false));
+        return single.termCount() == 0 ? PostingsIterator.empty() : single.postings(0);
+    }
+}
@@ -0,0 +1,17 @@
+package com.search.index;
+
+// Two-pointer walk over both position lists, always advancing the one that is behind
+record NearConstraint(int left, int right, int distance) implements PositionConstraint {
+
+    @Override
+    public boolean matches(PostingsIterator[] postings) {
+        OccurrenceIterator a = postings[left].occurrences();
+        OccurrenceIterator b = postings[right].occurrences();
+        if(!a.next() || !b.next()) return false;
+
+        while(true) {
+            if(Math.abs(a.position() - b.position()) <= distance) return true;
+            if(a.position() < b.position() ? !a.next() : !b.next()) return false;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.search.index;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+// One byte per doc id holding the doc's length in tokens, quantized on a log scale: lengths
+// below FREE_VALUES are exact, larger ones keep 4 significant bits (3 stored under an exponent)
+// and decode to the nearest such value, at most 1/16 (6.25%) off. Enough precision for length
+// normalization while a segment of a million docs costs 1 MB.
+public final class Norms {
+    private static final int MANTISSA_BITS = 3;
+    private static final int FREE_VALUES = 255 - encodeLog(Integer.MAX_VALUE);
+    private static final int[] DECODED = new int[256];
+
+    static {
+        for(int i = 0; i < DECODED.length; i++) {
+            DECODED[i] = i < FREE_VALUES ? i : decodeLog(i - FREE_VALUES) + FREE_VALUES;
+        }
+    }
+
+    private static final Norms EMPTY = new Norms(ByteBuffer.allocate(0));
+
+    private final ByteBuffer norms;
+    private final double averageLength;
+    private final int minLength;
+
+    Norms(ByteBuffer norms) {
+        this.norms = norms;
+
+        long total = 0;
+        int docs = 0;
+        int min = Integer.MAX_VALUE;
+        for(int docId = 0; docId < norms.capacity(); docId++) {
+            int length = DECODED[norms.get(docId) & 0xFF];
+            if(length == 0) continue;
+            total += length;
+            docs++;
+            min = Math.min(min, length);
+        }
+        this.averageLength = docs == 0 ? 1 : (double) total / docs;
+        this.minLength = docs == 0 ? 0 : min;
+    }
+
+    public static Norms empty() { return EMPTY; }
+
+    // lengths indexed by doc id
+    public static Norms fromLengths(int[] lengths) {
+        byte[] bytes = new byte[lengths.length];
+        for(int docId = 0; docId < lengths.length; docId++) {
+            bytes[docId] = encode(lengths[docId]);
+        }
+        return new Norms(ByteBuffer.wrap(bytes));
+    }
+
+    public static Norms fromLengths(Map<Integer, Integer> lengths) {
+        int maxDoc = lengths.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1);
+        int[] byDoc = new int[maxDoc + 1];
+        lengths.forEach((docId, length) -> byDoc[docId] = length);
+        return fromLengths(byDoc);
+    }
+
+    public static byte encode(int length) {
+        if(length < 0) {
+            throw new IllegalArgumentException("Negative length: " + length);
+        }
+        if(length < FREE_VALUES) return (byte) length;
+
+        int value = length - FREE_VALUES;
+        int encoded = encodeLog(value);
+        // encodeLog rounds down; take the next code up when its value is closer
+        if(encoded < 255 - FREE_VALUES && (long) decodeLog(encoded + 1) - value < value - decodeLog(encoded)) {
+            encoded++;
+        }
+        return (byte) (FREE_VALUES + encoded);
+    }
+
+    // Decoded length of a norm byte
+    public static int decode(byte norm) {
+        return DECODED[norm & 0xFF];
+    }
+
+    private static int encodeLog(int value) {
+        int bits = 32 - Integer.numberOfLeadingZeros(value);
+        if(bits <= MANTISSA_BITS + 1) return value;
+        int shift = bits - MANTISSA_BITS - 1;
+        return ((shift + 1) << MANTISSA_BITS) | ((value >>> shift) & ((1 << MANTISSA_BITS) - 1));
+    }
+
+    private static int decodeLog(int encoded) {
+        int shift = (encoded >>> MANTISSA_BITS) - 1;
+        int mantissa = encoded & ((1 << MANTISSA_BITS) - 1);
+        return shift < 0 ? mantissa : (mantissa | (1 << MANTISSA_BITS)) << shift;
+    }
+
+    // Norm byte of docId, 0 for doc ids beyond the segment
+    public byte norm(int docId) {
+        return docId < norms.capacity() ? norms.get(docId) : 0;
+    }
+
+    public int length(int docId) {
+        return decode(norm(docId));
+    }
+
+    public double averageLength() { return averageLength; }
+
+    public int minLength() { return minLength; }
+
+    ByteBuffer buffer() { return norms; }
+}
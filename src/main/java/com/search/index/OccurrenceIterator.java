@@ -0,0 +1,31 @@
+package com.search.index;
+
+// Walks the (position, offset) pairs of a single posting without boxing.
+// Usage: while(it.next()) { it.position(); it.offset(); }
+public final class OccurrenceIterator {
+    private final int[] positions;
+    private final int[] offsets;
+    private final int count;
+
+    private int index = -1;
+    private int position;
+    private int offset;
+
+    OccurrenceIterator(int[] positions, int[] offsets, int count) {
+        this.positions = positions;
+        this.offsets = offsets;
+        this.count = count;
+    }
+
+    public boolean next() {
+        if(++index >= count) return false;
+
+        position = positions[index];
+        offset = offsets[index];
+        return true;
+    }
+
+    public int index() { return index; }
+    public int position() { return position; }
+    public int offset() { return offset; }
+}
@@ -0,0 +1,48 @@
+package com.search.index;
+
+import java.util.Arrays;
+
+// Leapfrogs over the terms' position lists: the candidate phrase start only moves forward, so
+// each list is walked at most once per doc
+record PhraseConstraint(int[] termIndexes, int[] relativePositions) implements PositionConstraint {
+
+    @Override
+    public boolean matches(PostingsIterator[] postings) {
+        int n = termIndexes.length;
+        OccurrenceIterator[] occurrences = new OccurrenceIterator[n];
+        int start = Integer.MIN_VALUE;
+        for(int i = 0; i < n; i++) {
+            occurrences[i] = postings[termIndexes[i]].occurrences();
+            if(!occurrences[i].next()) return false;
+            start = Math.max(start, occurrences[i].position() - relativePositions[i]);
+        }
+
+        while(true) {
+            boolean aligned = true;
+            for(int i = 0; i < n; i++) {
+                int target = start + relativePositions[i];
+                while(occurrences[i].position() < target) {
+                    if(!occurrences[i].next()) return false;
+                }
+                if(occurrences[i].position() > target) {
+                    start = occurrences[i].position() - relativePositions[i];
+                    aligned = false;
+                }
+            }
+            if(aligned) return true;
+        }
+    }
+
+    // By content, so equal queries compare equal (e.g. as cache keys)
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof PhraseConstraint other
+            && Arrays.equals(termIndexes, other.termIndexes)
+            && Arrays.equals(relativePositions, other.relativePositions);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(termIndexes) + Arrays.hashCode(relativePositions);
+    }
+}
@@ -0,0 +1,18 @@
+package com.search.index;
+
+// Condition on where some of a query's terms occur within a doc. It is checked only once every
+// postings iterator involved sits on that doc, so positions are decoded for doc-level matches
+// only. 'postings' is indexed like the query's terms.
+public interface PositionConstraint {
+    boolean matches(PostingsIterator[] postings);
+
+    // The terms at termIndexes occur at the given positions relative to each other
+    static PositionConstraint phrase(int[] termIndexes, int[] relativePositions) {
+        return new PhraseConstraint(termIndexes, relativePositions);
+    }
+
+    // The two terms occur within 'distance' positions of each other, in either order
+    static PositionConstraint near(int left, int right, int distance) {
+        return new NearConstraint(left, right, distance);
+    }
+}
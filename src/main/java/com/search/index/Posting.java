@@ -1,20 +1,28 @@
 package com.search.index;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 public class Posting {
+    private static final int INITIAL_CAPACITY = 4;
+
     private int termFrequency;
-    private final List<Integer> positions = new ArrayList<>();
-    private final List<Integer> offsets = new ArrayList<>();
+    private int[] positions = new int[INITIAL_CAPACITY];
+    private int[] offsets = new int[INITIAL_CAPACITY];
 
     public void addOccurrence(int position, int offset) {
+        if(termFrequency == positions.length) {
+            int capacity = positions.length + (positions.length >> 1) + 1;
+            positions = Arrays.copyOf(positions, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+        }
+        positions[termFrequency] = position;
+        offsets[termFrequency] = offset;
         termFrequency++;
-        positions.add(position);
-        offsets.add(offset);
     }
 
     public int getTermFrequency() { return termFrequency; }
-    public List<Integer> getPositions() { return positions; }
-    public List<Integer> getOffsets() { return offsets; }
+
+    public OccurrenceIterator occurrences() {
+        return new OccurrenceIterator(positions, offsets, termFrequency);
+    }
 }
@@ -0,0 +1,77 @@
+package com.search.index;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+// Byte-weighted LRU cache of term postings shared by every lazily loaded segment. An entry is a
+// single-term FrozenIndex, so cached postings keep block skipping and score bounds.
+public final class PostingsCache {
+
+    public record Stats(long hits, long misses, long evictions, int entries, long bytes, long maxBytes) {
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+    }
+
+    private record Key(int segmentId, int termId) {}
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, FrozenIndex> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public PostingsCache(long maxBytes) {
+        if(maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    // Loads outside the lock so a slow fetch does not block hits; racing loads of one term are
+    // harmless because postings never change once a segment is sealed
+    public FrozenIndex get(int segmentId, int termId, IntFunction<FrozenIndex> loader) {
+        Key key = new Key(segmentId, termId);
+        synchronized (this) {
+            FrozenIndex cached = entries.get(key);
+            if(cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+
+        FrozenIndex loaded = loader.apply(termId);
+        long weight = loaded.encodedBytes();
+        if(weight > maxBytes) return loaded;
+
+        synchronized (this) {
+            FrozenIndex previous = entries.put(key, loaded);
+            if(previous != null) {
+                bytes -= previous.encodedBytes();
+            }
+            bytes += weight;
+
+            Iterator<FrozenIndex> eldest = entries.values().iterator();
+            while(bytes > maxBytes) {
+                bytes -= eldest.next().encodedBytes();
+                eldest.remove();
+                evictions++;
+            }
+        }
+        return loaded;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, entries.size(), bytes, maxBytes);
+    }
+}
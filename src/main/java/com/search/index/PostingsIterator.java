@@ -0,0 +1,32 @@
+package com.search.index;
+
+// Iterates one term's postings in ascending doc-id order; cost() is the term's df.
+public interface PostingsIterator extends DocIdIterator {
+
+    static PostingsIterator empty() {
+        return new PostingsIterator() {
+            private int doc = -1;
+
+            @Override public int docId() { return doc; }
+            @Override public int nextDoc() { return doc = NO_MORE_DOCS; }
+            @Override public int advance(int target) { return doc = NO_MORE_DOCS; }
+            @Override public int termFrequency() { return 0; }
+            @Override public OccurrenceIterator occurrences() { throw new IllegalStateException("No current document"); }
+            @Override public int advanceShallow(int target) { return NO_MORE_DOCS; }
+            @Override public int blockMaxTermFrequency() { return 0; }
+            @Override public int maxTermFrequency() { return 0; }
+            @Override public int cost() { return 0; }
+        };
+    }
+
+    int termFrequency();
+    OccurrenceIterator occurrences();
+
+    // Moves a cursor over block metadata (not the postings) to the block that may contain target
+    // and returns the last doc id that block covers, or NO_MORE_DOCS past the last block.
+    // blockMaxTermFrequency() then bounds the tf of every doc from target up to that doc id.
+    int advanceShallow(int target);
+    int blockMaxTermFrequency();
+
+    int maxTermFrequency();
+}
@@ -0,0 +1,83 @@
+package com.search.index;
+
+import java.time.Duration;
+
+// Deadline and cancellation flag of one query. Nothing is interrupted: the loops that run the
+// query (postings iteration, segment fan-out, dictionary scans, vector scans) poll shouldStop()
+// about every CHECK_INTERVAL units of work (postings advanced, terms or vectors visited) and return
+// what they have gathered so far. Once any of them has stopped early the query's results are
+// partial. Parts of a query that run side by side can each get a child context with a budget of
+// their own.
+public final class QueryContext {
+    // Work between two polls; a poll reads the clock, which is cheap but not free per posting
+    public static final int CHECK_INTERVAL = 1024;
+    public static final int CHECK_MASK = CHECK_INTERVAL - 1;
+
+    private final QueryContext parent;
+    private final long deadline;
+    private final boolean bounded;
+    private volatile boolean cancelled;
+    private volatile boolean stopped;
+    private volatile boolean partial;
+
+    private QueryContext(QueryContext parent, long deadline, boolean bounded) {
+        this.parent = parent;
+        this.deadline = deadline;
+        this.bounded = bounded;
+    }
+
+    public static QueryContext unbounded() {
+        return new QueryContext(null, 0, false);
+    }
+
+    // Zero or negative timeouts mean no deadline
+    public static QueryContext withTimeout(Duration timeout) {
+        if(timeout.isZero() || timeout.isNegative()) return unbounded();
+        return new QueryContext(null, System.nanoTime() + timeout.toNanos(), true);
+    }
+
+    // A context for one part of this query, stopping at the earlier of this context's deadline and
+    // 'budget' from now (zero or negative: this context's deadline only), or when either is
+    // cancelled. The part stopping early makes this context partial but does not stop it, so the
+    // other parts carry on.
+    public QueryContext child(Duration budget) {
+        if(budget.isZero() || budget.isNegative()) return new QueryContext(this, deadline, bounded);
+        long childDeadline = System.nanoTime() + budget.toNanos();
+        if(bounded && deadline - childDeadline < 0) childDeadline = deadline;
+        return new QueryContext(this, childDeadline, true);
+    }
+
+    // May be called from any thread; running loops notice at their next poll
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (parent != null && parent.isCancelled());
+    }
+
+    // True when the query is cancelled or out of time. A true answer marks the results partial,
+    // so only ask when about to cut work short.
+    public boolean shouldStop() {
+        if(stopped) return true;
+        if(isCancelled() || (bounded && System.nanoTime() - deadline >= 0)) {
+            stopped = true;
+            for(QueryContext context = this; context != null; context = context.parent) {
+                context.partial = true;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // Whether some part of the query, child contexts included, stopped before finishing its work
+    public boolean isPartial() {
+        return partial;
+    }
+
+    // Time left before the deadline, for blocking calls that take a timeout; null without one
+    public Duration remaining() {
+        if(!bounded) return null;
+        return Duration.ofNanos(Math.max(0, deadline - System.nanoTime()));
+    }
+}
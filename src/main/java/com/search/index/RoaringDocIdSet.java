@@ -0,0 +1,329 @@
+package com.search.index;
+
+import java.util.Arrays;
+
+// Immutable compressed doc id set in the style of Roaring bitmaps. Ids are split by their high
+// 16 bits into chunks; each chunk keeps the smallest of a sorted array (sparse), a 2^16-bit
+// bitmap (dense) or a list of runs (clustered). Two bitmap chunks intersect with word-level ANDs,
+// an array chunk by probing the other side.
+public final class RoaringDocIdSet {
+
+    // Above this many values a bitmap chunk (8 KiB) is no larger than an array chunk
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+    private static final int OBJECT_BYTES = 16;
+
+    private static final RoaringDocIdSet EMPTY = new RoaringDocIdSet(new char[0], new Container[0]);
+
+    private final char[] keys;
+    private final Container[] containers;
+    private final int cardinality;
+
+    private RoaringDocIdSet(char[] keys, Container[] containers) {
+        this.keys = keys;
+        this.containers = containers;
+        int total = 0;
+        for(Container container : containers) {
+            total += container.cardinality();
+        }
+        this.cardinality = total;
+    }
+
+    public static RoaringDocIdSet empty() { return EMPTY; }
+
+    // Drains 'docs', which must not have been positioned yet
+    public static RoaringDocIdSet of(DocIdIterator docs) {
+        char[] keys = new char[4];
+        Container[] containers = new Container[4];
+        int chunks = 0;
+
+        char[] lows = new char[1 << 16];
+        int count = 0;
+        int key = -1;
+        for(int doc = docs.nextDoc(); doc != DocIdIterator.NO_MORE_DOCS; doc = docs.nextDoc()) {
+            int high = doc >>> 16;
+            if(high != key) {
+                if(count > 0) {
+                    if(chunks == keys.length) {
+                        keys = Arrays.copyOf(keys, chunks * 2);
+                        containers = Arrays.copyOf(containers, chunks * 2);
+                    }
+                    keys[chunks] = (char) key;
+                    containers[chunks++] = Container.of(lows, count);
+                }
+                key = high;
+                count = 0;
+            }
+            lows[count++] = (char) doc;
+        }
+        if(count > 0) {
+            if(chunks == keys.length) {
+                keys = Arrays.copyOf(keys, chunks + 1);
+                containers = Arrays.copyOf(containers, chunks + 1);
+            }
+            keys[chunks] = (char) key;
+            containers[chunks++] = Container.of(lows, count);
+        }
+        return chunks == 0 ? EMPTY : new RoaringDocIdSet(Arrays.copyOf(keys, chunks), Arrays.copyOf(containers, chunks));
+    }
+
+    public int cardinality() { return cardinality; }
+
+    public boolean contains(int docId) {
+        int chunk = Arrays.binarySearch(keys, (char) (docId >>> 16));
+        return chunk >= 0 && containers[chunk].contains((char) docId);
+    }
+
+    public long sizeInBytes() {
+        long bytes = OBJECT_BYTES + 2L * keys.length + 8L * containers.length;
+        for(Container container : containers) {
+            bytes += container.sizeInBytes();
+        }
+        return bytes;
+    }
+
+    public RoaringDocIdSet and(RoaringDocIdSet other) {
+        char[] andKeys = new char[Math.min(keys.length, other.keys.length)];
+        Container[] andContainers = new Container[andKeys.length];
+        int chunks = 0;
+        for(int i = 0, j = 0; i < keys.length && j < other.keys.length; ) {
+            if(keys[i] < other.keys[j]) {
+                i++;
+            } else if(keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container and = containers[i].and(other.containers[j]);
+                if(and != null) {
+                    andKeys[chunks] = keys[i];
+                    andContainers[chunks++] = and;
+                }
+                i++;
+                j++;
+            }
+        }
+        return chunks == 0 ? EMPTY : new RoaringDocIdSet(Arrays.copyOf(andKeys, chunks), Arrays.copyOf(andContainers, chunks));
+    }
+
+    public DocIdIterator iterator() {
+        return new DocIdIterator() {
+            private int chunk;
+            private int docId = -1;
+
+            @Override
+            public int docId() { return docId; }
+
+            @Override
+            public int nextDoc() {
+                return docId == NO_MORE_DOCS ? NO_MORE_DOCS : advance(docId + 1);
+            }
+
+            @Override
+            public int advance(int target) {
+                if(target <= docId) return docId;
+                int high = target >>> 16;
+                while(chunk < keys.length && keys[chunk] < high) {
+                    chunk++;
+                }
+                for(; chunk < keys.length; chunk++) {
+                    int next = containers[chunk].next(keys[chunk] == high ? target & 0xFFFF : 0);
+                    if(next >= 0) {
+                        return docId = keys[chunk] << 16 | next;
+                    }
+                }
+                return docId = NO_MORE_DOCS;
+            }
+
+            @Override
+            public int cost() { return cardinality; }
+        };
+    }
+
+    private sealed interface Container permits ArrayContainer, BitmapContainer, RunContainer {
+        int cardinality();
+        boolean contains(char low);
+        // Smallest value >= low, or -1
+        int next(int low);
+        long sizeInBytes();
+        // Null when the intersection is empty
+        Container and(Container other);
+
+        static Container of(char[] lows, int count) {
+            int runs = 1;
+            for(int i = 1; i < count; i++) {
+                if(lows[i] != lows[i - 1] + 1) runs++;
+            }
+
+            long arrayBytes = 2L * count;
+            long bitmapBytes = 8L * BITMAP_WORDS;
+            long runBytes = 4L * runs;
+            if(runBytes < Math.min(arrayBytes, bitmapBytes)) {
+                return RunContainer.of(lows, count, runs);
+            }
+            if(count <= ARRAY_MAX) {
+                return new ArrayContainer(Arrays.copyOf(lows, count));
+            }
+            long[] words = new long[BITMAP_WORDS];
+            for(int i = 0; i < count; i++) {
+                words[lows[i] >>> 6] |= 1L << lows[i];
+            }
+            return new BitmapContainer(words, count);
+        }
+
+        static Container fromWords(long[] words) {
+            int count = 0;
+            for(long word : words) {
+                count += Long.bitCount(word);
+            }
+            if(count == 0) return null;
+            if(count > ARRAY_MAX) return new BitmapContainer(words, count);
+
+            char[] values = new char[count];
+            int n = 0;
+            for(int w = 0; w < words.length; w++) {
+                for(long word = words[w]; word != 0; word &= word - 1) {
+                    values[n++] = (char) (w << 6 | Long.numberOfTrailingZeros(word));
+                }
+            }
+            return new ArrayContainer(values);
+        }
+    }
+
+    private record ArrayContainer(char[] values) implements Container {
+        @Override
+        public int cardinality() { return values.length; }
+
+        @Override
+        public boolean contains(char low) {
+            return Arrays.binarySearch(values, low) >= 0;
+        }
+
+        @Override
+        public int next(int low) {
+            if(low > 0xFFFF) return -1;
+            int i = Arrays.binarySearch(values, (char) low);
+            if(i < 0) i = -i - 1;
+            return i < values.length ? values[i] : -1;
+        }
+
+        @Override
+        public long sizeInBytes() { return OBJECT_BYTES + 2L * values.length; }
+
+        @Override
+        public Container and(Container other) {
+            if(other instanceof ArrayContainer array && array.values.length < values.length) {
+                return array.and(this);
+            }
+            char[] kept = new char[values.length];
+            int n = 0;
+            for(char value : values) {
+                if(other.contains(value)) kept[n++] = value;
+            }
+            return n == 0 ? null : new ArrayContainer(Arrays.copyOf(kept, n));
+        }
+    }
+
+    private record BitmapContainer(long[] words, int cardinality) implements Container {
+        @Override
+        public boolean contains(char low) {
+            return (words[low >>> 6] & 1L << low) != 0;
+        }
+
+        @Override
+        public int next(int low) {
+            if(low > 0xFFFF) return -1;
+            int w = low >>> 6;
+            long word = words[w] & -1L << low;
+            while(word == 0) {
+                if(++w == words.length) return -1;
+                word = words[w];
+            }
+            return w << 6 | Long.numberOfTrailingZeros(word);
+        }
+
+        @Override
+        public long sizeInBytes() { return OBJECT_BYTES + 8L * words.length; }
+
+        @Override
+        public Container and(Container other) {
+            if(other instanceof ArrayContainer) return other.and(this);
+            long[] otherWords = other instanceof BitmapContainer bitmap ? bitmap.words : ((RunContainer) other).toWords();
+            long[] and = new long[BITMAP_WORDS];
+            for(int w = 0; w < and.length; w++) {
+                and[w] = words[w] & otherWords[w];
+            }
+            return Container.fromWords(and);
+        }
+    }
+
+    // Run i covers starts[i] .. starts[i] + lengths[i], both inclusive
+    private record RunContainer(char[] starts, char[] lengths, int cardinality) implements Container {
+        static RunContainer of(char[] lows, int count, int runs) {
+            char[] starts = new char[runs];
+            char[] lengths = new char[runs];
+            int run = 0;
+            starts[0] = lows[0];
+            for(int i = 1; i < count; i++) {
+                if(lows[i] != lows[i - 1] + 1) {
+                    lengths[run] = (char) (lows[i - 1] - starts[run]);
+                    starts[++run] = lows[i];
+                }
+            }
+            lengths[run] = (char) (lows[count - 1] - starts[run]);
+            return new RunContainer(starts, lengths, count);
+        }
+
+        @Override
+        public boolean contains(char low) {
+            int i = Arrays.binarySearch(starts, low);
+            if(i >= 0) return true;
+            i = -i - 2;
+            return i >= 0 && low <= starts[i] + lengths[i];
+        }
+
+        @Override
+        public int next(int low) {
+            if(low > 0xFFFF) return -1;
+            int i = Arrays.binarySearch(starts, (char) low);
+            if(i >= 0) return low;
+            i = -i - 2;
+            if(i >= 0 && low <= starts[i] + lengths[i]) return low;
+            return i + 1 < starts.length ? starts[i + 1] : -1;
+        }
+
+        @Override
+        public long sizeInBytes() { return OBJECT_BYTES + 4L * starts.length; }
+
+        @Override
+        public Container and(Container other) {
+            if(other instanceof ArrayContainer) return other.and(this);
+            long[] otherWords = other instanceof BitmapContainer bitmap ? bitmap.words : ((RunContainer) other).toWords();
+            long[] and = toWords();
+            for(int w = 0; w < and.length; w++) {
+                and[w] &= otherWords[w];
+            }
+            return Container.fromWords(and);
+        }
+
+        long[] toWords() {
+            long[] words = new long[BITMAP_WORDS];
+            for(int i = 0; i < starts.length; i++) {
+                int from = starts[i];
+                int to = from + lengths[i] + 1;
+                int first = from >>> 6;
+                int last = (to - 1) >>> 6;
+                long firstMask = -1L << from;
+                long lastMask = -1L >>> -to;
+                if(first == last) {
+                    words[first] |= firstMask & lastMask;
+                } else {
+                    words[first] |= firstMask;
+                    for(int w = first + 1; w < last; w++) {
+                        words[w] = -1L;
+                    }
+                    words[last] |= lastMask;
+                }
+            }
+            return words;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.search.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+import com.search.index.codec.BytesWriter;
+import com.search.index.codec.PostingsCodec;
+import com.search.index.codec.PostingsCodecs;
+
+// On-disk form of a sealed segment, queried straight from a read-only mapping.
+//
+// Layout (big-endian):
+//   header   magic, version, segment id, codec id, term count, doc count,
+//            then (offset, length) for each section
+//   sections term index, term bytes, term table, postings, occurrences, norms (see FrozenIndex),
+//            doc map as (doc id, canonical doc id) pairs in doc-id order
+//   footer   footer magic, CRC32C of everything before the footer
+public final class SegmentFile {
+    public static final int VERSION = 2;
+
+    private static final int MAGIC = 0x53454746;
+    private static final int FOOTER_MAGIC = 0x46474553;
+    private static final int SECTION_COUNT = 7;
+    private static final int HEADER_BYTES = 6 * Integer.BYTES + SECTION_COUNT * 2 * Integer.BYTES;
+    private static final int FOOTER_BYTES = Integer.BYTES + Long.BYTES;
+
+    private final int segmentId;
+    private final FrozenIndex index;
+    private final int docCount;
+    private final ByteBuffer docMap;
+
+    private SegmentFile(int segmentId, FrozenIndex index, int docCount, ByteBuffer docMap) {
+        this.segmentId = segmentId;
+        this.index = index;
+        this.docCount = docCount;
+        this.docMap = docMap;
+    }
+
+    public static Path path(Path directory, int segmentId) {
+        return directory.resolve("segment-" + segmentId + ".seg");
+    }
+
+    // Writes to a temporary sibling first so a crash never leaves a truncated file at 'path'
+    public static void write(Path path, int segmentId, FrozenIndex index, Map<Integer, Integer> docToCanonical) throws IOException {
+        BytesWriter docs = new BytesWriter(2 * Integer.BYTES * docToCanonical.size());
+        for(var entry : new TreeMap<>(docToCanonical).entrySet()) {
+            docs.writeInt(entry.getKey());
+            docs.writeInt(entry.getValue());
+        }
+
+        ByteBuffer[] indexSections = index.sections();
+        ByteBuffer[] sections = new ByteBuffer[SECTION_COUNT];
+        System.arraycopy(indexSections, 0, sections, 0, indexSections.length);
+        sections[SECTION_COUNT - 1] = ByteBuffer.wrap(docs.toByteArray());
+
+        BytesWriter header = new BytesWriter(HEADER_BYTES);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeInt(segmentId);
+        header.writeInt(index.getCodec().id());
+        header.writeInt(index.termCount());
+        header.writeInt(docToCanonical.size());
+        long offset = HEADER_BYTES;
+        for(ByteBuffer section : sections) {
+            header.writeInt((int) offset);
+            header.writeInt(section.capacity());
+            offset += section.capacity();
+        }
+        if(offset + FOOTER_BYTES > Integer.MAX_VALUE) {
+            throw new IOException("Segment " + segmentId + " is too large for a single mapping");
+        }
+
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tmp = directory.resolve(path.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tmp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CRC32C crc = new CRC32C();
+            writeFully(channel, ByteBuffer.wrap(header.toByteArray()), crc);
+            for(ByteBuffer section : sections) {
+                writeFully(channel, section.duplicate().clear(), crc);
+            }
+
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_BYTES);
+            footer.putInt(FOOTER_MAGIC).putLong(crc.getValue()).flip();
+            writeFully(channel, footer, null);
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, CRC32C crc) throws IOException {
+        if(crc != null) {
+            crc.update(buffer.duplicate());
+        }
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // Maps the file and validates header, footer and section layout; nothing is copied onto the heap.
+    // Cheap enough for every startup; the checksum is left to verify().
+    public static SegmentFile open(Path path) throws IOException {
+        return open(path, false);
+    }
+
+    // As open(), also checksumming the whole file (e.g. after an unclean shutdown)
+    public static SegmentFile open(Path path, boolean verifyChecksum) throws IOException {
+        MappedByteBuffer map = map(path);
+        if(verifyChecksum) {
+            checkChecksum(path, map);
+        }
+        return read(path, map);
+    }
+
+    // Reads every byte of the file and throws when it does not match the checksum in its footer
+    public static void verify(Path path) throws IOException {
+        checkChecksum(path, map(path));
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        MappedByteBuffer map;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size < HEADER_BYTES + FOOTER_BYTES || size > Integer.MAX_VALUE) {
+                throw corrupt(path, "unexpected size " + size);
+            }
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        if(map.getInt(0) != MAGIC) {
+            throw corrupt(path, "bad magic");
+        }
+        if(map.getInt(4) != VERSION) {
+            throw corrupt(path, "unsupported version " + map.getInt(4));
+        }
+
+        if(map.getInt(map.capacity() - FOOTER_BYTES) != FOOTER_MAGIC) {
+            throw corrupt(path, "bad footer");
+        }
+        return map;
+    }
+
+    private static void checkChecksum(Path path, MappedByteBuffer map) throws IOException {
+        int bodyLength = map.capacity() - FOOTER_BYTES;
+        CRC32C crc = new CRC32C();
+        crc.update(map.slice(0, bodyLength));
+        if(crc.getValue() != map.getLong(bodyLength + Integer.BYTES)) {
+            throw corrupt(path, "checksum mismatch");
+        }
+    }
+
+    private static SegmentFile read(Path path, MappedByteBuffer map) throws IOException {
+        int bodyLength = map.capacity() - FOOTER_BYTES;
+        int segmentId = map.getInt(8);
+        PostingsCodec codec;
+        try {
+            codec = PostingsCodecs.forId(map.getInt(12));
+        } catch (IllegalArgumentException e) {
+            throw corrupt(path, e.getMessage());
+        }
+        int termCount = map.getInt(16);
+        int docCount = map.getInt(20);
+
+        // Sections are written back to back, so they must tile the body exactly; a truncated or
+        // extended file fails here
+        ByteBuffer[] sections = new ByteBuffer[SECTION_COUNT];
+        int expectedOffset = HEADER_BYTES;
+        for(int i = 0; i < SECTION_COUNT; i++) {
+            int sectionOffset = map.getInt(24 + i * 2 * Integer.BYTES);
+            int sectionLength = map.getInt(28 + i * 2 * Integer.BYTES);
+            if(sectionOffset != expectedOffset || sectionLength < 0 || sectionOffset > bodyLength - sectionLength) {
+                throw corrupt(path, "section " + i + " out of bounds");
+            }
+            sections[i] = map.slice(sectionOffset, sectionLength);
+            expectedOffset = sectionOffset + sectionLength;
+        }
+        if(expectedOffset != bodyLength) {
+            throw corrupt(path, "length " + map.capacity() + " does not match its sections");
+        }
+        if(sections[0].capacity() != (termCount + 1) * Integer.BYTES
+                || sections[2].capacity() != termCount * FrozenIndex.TERM_ENTRY_BYTES
+                || sections[6].capacity() != docCount * 2 * Integer.BYTES) {
+            throw corrupt(path, "section sizes do not match header counts");
+        }
+
+        FrozenIndex index = new FrozenIndex(codec, termCount,
+            sections[0], sections[1], sections[2], sections[3], sections[4], sections[5]);
+        return new SegmentFile(segmentId, index, docCount, sections[6]);
+    }
+
+    private static IOException corrupt(Path path, String reason) {
+        return new IOException("Corrupt segment file " + path + ": " + reason);
+    }
+
+    public int getSegmentId() { return segmentId; }
+    public FrozenIndex getIndex() { return index; }
+
+    public Map<Integer, Integer> loadDocMap() {
+        Map<Integer, Integer> docToCanonical = new HashMap<>();
+        for(int i = 0; i < docCount; i++) {
+            docToCanonical.put(docMap.getInt(i * 2 * Integer.BYTES), docMap.getInt(i * 2 * Integer.BYTES + Integer.BYTES));
+        }
+        return docToCanonical;
+    }
+}
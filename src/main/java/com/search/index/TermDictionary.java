@@ -0,0 +1,44 @@
+package com.search.index;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Process-wide term <-> id mapping mirroring the terms table. Query terms are resolved to ids
+// once per query; each segment then maps those ids to its own term ids without hashing strings.
+public final class TermDictionary {
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final Map<Integer, String> terms = new ConcurrentHashMap<>();
+
+    public void reload(Map<Integer, String> termsById) {
+        ids.clear();
+        terms.clear();
+        termsById.forEach(this::add);
+    }
+
+    public void add(int termId, String term) {
+        ids.put(term, termId);
+        terms.put(termId, term);
+    }
+
+    // Returns -1 for terms that occur in no segment
+    public int id(String term) {
+        Integer termId = ids.get(term);
+        return termId == null ? -1 : termId;
+    }
+
+    // Returns null for unknown ids
+    public String term(int termId) {
+        return terms.get(termId);
+    }
+
+    public int[] resolve(List<String> queryTerms) {
+        int[] termIds = new int[queryTerms.size()];
+        for(int i = 0; i < termIds.length; i++) {
+            termIds[i] = id(queryTerms.get(i));
+        }
+        return termIds;
+    }
+
+    public int size() { return ids.size(); }
+}
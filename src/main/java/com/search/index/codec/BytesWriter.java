@@ -0,0 +1,65 @@
+package com.search.index.codec;
+
+import java.util.Arrays;
+
+public final class BytesWriter {
+    private byte[] bytes;
+    private int size;
+
+    public BytesWriter() {
+        this(64);
+    }
+
+    public BytesWriter(int initialCapacity) {
+        this.bytes = new byte[Math.max(initialCapacity, 16)];
+    }
+
+    public void writeByte(int b) {
+        ensureCapacity(size + 1);
+        bytes[size++] = (byte) b;
+    }
+
+    // Big-endian, matching ByteBuffer.getInt
+    public void writeInt(int value) {
+        ensureCapacity(size + 4);
+        bytes[size++] = (byte) (value >>> 24);
+        bytes[size++] = (byte) (value >>> 16);
+        bytes[size++] = (byte) (value >>> 8);
+        bytes[size++] = (byte) value;
+    }
+
+    public void writeVInt(int value) {
+        ensureCapacity(size + 5);
+        while((value & ~0x7F) != 0) {
+            bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+    }
+
+    public void writeBytes(byte[] other) {
+        ensureCapacity(size + other.length);
+        System.arraycopy(other, 0, bytes, size, other.length);
+        size += other.length;
+    }
+
+    public void writeBytes(BytesWriter other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.bytes, 0, bytes, size, other.size);
+        size += other.size;
+    }
+
+    public void reset() { size = 0; }
+
+    public int size() { return size; }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if(capacity > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length << 1));
+        }
+    }
+}
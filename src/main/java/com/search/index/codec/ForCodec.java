@@ -0,0 +1,115 @@
+package com.search.index.codec;
+
+import java.nio.ByteBuffer;
+
+// Frame-of-reference: full blocks of BLOCK_SIZE values are stored as (min, bit width)
+// followed by every value minus min bit-packed at that width. A trailing partial block
+// is too short to amortize the header and falls back to variable-byte.
+public final class ForCodec implements PostingsCodec {
+    public static final int ID = 2;
+    public static final int BLOCK_SIZE = 128;
+
+    @Override
+    public int id() { return ID; }
+
+    @Override
+    public String name() { return "for"; }
+
+    @Override
+    public void encode(int[] values, int from, int length, BytesWriter out) {
+        int end = from + length;
+        int i = from;
+        for(; end - i >= BLOCK_SIZE; i += BLOCK_SIZE) {
+            packBlock(values, i, out);
+        }
+        for(; i < end; i++) {
+            out.writeVInt(values[i]);
+        }
+    }
+
+    private static void packBlock(int[] values, int from, BytesWriter out) {
+        int min = values[from];
+        int max = values[from];
+        for(int i = from + 1; i < from + BLOCK_SIZE; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+        }
+        int bits = 32 - Integer.numberOfLeadingZeros(max - min);
+
+        out.writeByte(bits);
+        out.writeVInt(min);
+        if(bits == 0) return;
+
+        long buffer = 0;
+        int buffered = 0;
+        for(int i = from; i < from + BLOCK_SIZE; i++) {
+            buffer |= (long) (values[i] - min) << buffered;
+            buffered += bits;
+            while(buffered >= 8) {
+                out.writeByte((int) buffer);
+                buffer >>>= 8;
+                buffered -= 8;
+            }
+        }
+        if(buffered > 0) {
+            out.writeByte((int) buffer);
+        }
+    }
+
+    @Override
+    public int decode(ByteBuffer in, int position, int[] out, int length) {
+        int o = 0;
+        for(; length - o >= BLOCK_SIZE; o += BLOCK_SIZE) {
+            position = unpackBlock(in, position, out, o);
+        }
+        return VByteCodec.decode(in, position, out, o, length - o);
+    }
+
+    private static int unpackBlock(ByteBuffer in, int position, int[] out, int outOffset) {
+        int bits = in.get(position++);
+
+        byte b = in.get(position++);
+        int min = b & 0x7F;
+        for(int shift = 7; b < 0; shift += 7) {
+            b = in.get(position++);
+            min |= (b & 0x7F) << shift;
+        }
+
+        if(bits == 0) {
+            for(int i = outOffset; i < outOffset + BLOCK_SIZE; i++) {
+                out[i] = min;
+            }
+            return position;
+        }
+
+        long mask = (1L << bits) - 1;
+        long buffer = 0;
+        int buffered = 0;
+        for(int i = outOffset; i < outOffset + BLOCK_SIZE; i++) {
+            while(buffered < bits) {
+                buffer |= (long) (in.get(position++) & 0xFF) << buffered;
+                buffered += 8;
+            }
+            out[i] = min + (int) (buffer & mask);
+            buffer >>>= bits;
+            buffered -= bits;
+        }
+        return position;
+    }
+
+    @Override
+    public int skip(ByteBuffer in, int position, int length) {
+        int remaining = length;
+        for(; remaining >= BLOCK_SIZE; remaining -= BLOCK_SIZE) {
+            int bits = in.get(position++);
+            while(in.get(position++) < 0) {
+                // skip the min's continuation bytes
+            }
+            position += (BLOCK_SIZE * bits + 7) >>> 3;
+        }
+        while(remaining > 0) {
+            if(in.get(position++) >= 0) remaining--;
+        }
+        return position;
+    }
+}
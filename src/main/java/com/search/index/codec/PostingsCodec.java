@@ -0,0 +1,18 @@
+package com.search.index.codec;
+
+import java.nio.ByteBuffer;
+
+// Encodes runs of non-negative ints (doc-id gaps, term frequencies, position/offset gaps).
+// Decoding reads at absolute buffer positions, so one buffer can be shared by concurrent readers.
+public interface PostingsCodec {
+    int id();
+    String name();
+
+    void encode(int[] values, int from, int length, BytesWriter out);
+
+    // Decodes 'length' values into out[0..length) and returns the position after them
+    int decode(ByteBuffer in, int position, int[] out, int length);
+
+    // Returns the position after 'length' encoded values without materializing them
+    int skip(ByteBuffer in, int position, int length);
+}
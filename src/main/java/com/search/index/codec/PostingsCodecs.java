@@ -0,0 +1,75 @@
+package com.search.index.codec;
+
+import java.nio.ByteBuffer;
+
+public final class PostingsCodecs {
+    public static final PostingsCodec VBYTE = new VByteCodec();
+    public static final PostingsCodec FOR = new ForCodec();
+
+    private static final PostingsCodec DEFAULT = forName(System.getProperty("search.postings.codec", FOR.name()));
+
+    public static PostingsCodec getDefault() { return DEFAULT; }
+
+    public static PostingsCodec forId(int id) {
+        return switch(id) {
+            case VByteCodec.ID -> VBYTE;
+            case ForCodec.ID -> FOR;
+            default -> throw new IllegalArgumentException("Unknown postings codec id: " + id);
+        };
+    }
+
+    public static PostingsCodec forName(String name) {
+        return switch(name) {
+            case "vbyte" -> VBYTE;
+            case "for" -> FOR;
+            default -> throw new IllegalArgumentException("Unknown postings codec: " + name);
+        };
+    }
+
+    // Self-describing blob for one posting's occurrences: codec id, then position gaps, then offset gaps.
+    public static byte[] encodeOccurrences(PostingsCodec codec, int[] positions, int[] offsets, int count) {
+        BytesWriter out = new BytesWriter(1 + 2 * count);
+        out.writeByte(codec.id());
+        writeOccurrences(codec, positions, offsets, count, out);
+        return out.toByteArray();
+    }
+
+    // Decodes a blob written by encodeOccurrences back into absolute positions and offsets
+    public static void decodeOccurrences(byte[] blob, int count, int[] positions, int[] offsets) {
+        ByteBuffer in = ByteBuffer.wrap(blob);
+        PostingsCodec codec = forId(in.get(0));
+        readOccurrences(codec, in, 1, positions, offsets, count);
+    }
+
+    public static void writeOccurrences(PostingsCodec codec, int[] positions, int[] offsets, int count, BytesWriter out) {
+        int[] gaps = new int[count];
+        toGaps(positions, gaps, count);
+        codec.encode(gaps, 0, count, out);
+        toGaps(offsets, gaps, count);
+        codec.encode(gaps, 0, count, out);
+    }
+
+    public static int readOccurrences(PostingsCodec codec, ByteBuffer in, int position, int[] positions, int[] offsets, int count) {
+        position = codec.decode(in, position, positions, count);
+        position = codec.decode(in, position, offsets, count);
+        fromGaps(positions, count);
+        fromGaps(offsets, count);
+        return position;
+    }
+
+    private static void toGaps(int[] values, int[] gaps, int count) {
+        int previous = 0;
+        for(int i = 0; i < count; i++) {
+            gaps[i] = values[i] - previous;
+            previous = values[i];
+        }
+    }
+
+    private static void fromGaps(int[] values, int count) {
+        for(int i = 1; i < count; i++) {
+            values[i] += values[i - 1];
+        }
+    }
+
+    private PostingsCodecs() {}
+}
@@ -0,0 +1,48 @@
+package com.search.index.codec;
+
+import java.nio.ByteBuffer;
+
+// Variable-byte: 7 payload bits per byte, high bit set on every byte except the last.
+public final class VByteCodec implements PostingsCodec {
+    public static final int ID = 1;
+
+    @Override
+    public int id() { return ID; }
+
+    @Override
+    public String name() { return "vbyte"; }
+
+    @Override
+    public void encode(int[] values, int from, int length, BytesWriter out) {
+        for(int i = from; i < from + length; i++) {
+            out.writeVInt(values[i]);
+        }
+    }
+
+    @Override
+    public int decode(ByteBuffer in, int position, int[] out, int length) {
+        return decode(in, position, out, 0, length);
+    }
+
+    static int decode(ByteBuffer in, int position, int[] out, int outOffset, int length) {
+        for(int i = outOffset; i < outOffset + length; i++) {
+            byte b = in.get(position++);
+            int value = b & 0x7F;
+            for(int shift = 7; b < 0; shift += 7) {
+                b = in.get(position++);
+                value |= (b & 0x7F) << shift;
+            }
+            out[i] = value;
+        }
+        return position;
+    }
+
+    @Override
+    public int skip(ByteBuffer in, int position, int length) {
+        int remaining = length;
+        while(remaining > 0) {
+            if(in.get(position++) >= 0) remaining--;
+        }
+        return position;
+    }
+}
@@ -0,0 +1,4 @@
+package com.search.model;
+
+// Resident metadata of a canonical document; the content itself is fetched on demand
+public record DocumentInfo(int canonicalId, String url, String title, int length) {}
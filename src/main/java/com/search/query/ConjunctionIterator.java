@@ -0,0 +1,56 @@
+package com.search.query;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.search.index.DocIdIterator;
+
+// Leapfrog intersection: the cheapest iterator leads and every other one is advanced to the
+// lead's candidate. Whenever one overshoots, the lead jumps to that doc instead.
+public final class ConjunctionIterator implements DocIdIterator {
+    private final DocIdIterator lead;
+    private final DocIdIterator[] others;
+    private int docId = -1;
+
+    public ConjunctionIterator(List<? extends DocIdIterator> iterators) {
+        if(iterators.isEmpty()) {
+            throw new IllegalArgumentException("Conjunction needs at least one iterator");
+        }
+        DocIdIterator[] sorted = iterators.toArray(new DocIdIterator[0]);
+        Arrays.sort(sorted, Comparator.comparingInt(DocIdIterator::cost));
+        this.lead = sorted[0];
+        this.others = Arrays.copyOfRange(sorted, 1, sorted.length);
+    }
+
+    @Override
+    public int docId() { return docId; }
+
+    @Override
+    public int nextDoc() {
+        return doNext(lead.nextDoc());
+    }
+
+    @Override
+    public int advance(int target) {
+        return doNext(lead.advance(target));
+    }
+
+    private int doNext(int doc) {
+        advanceLead:
+        while(doc != NO_MORE_DOCS) {
+            for(DocIdIterator other : others) {
+                int otherDoc = other.docId() < doc ? other.advance(doc) : other.docId();
+                if(otherDoc > doc) {
+                    doc = lead.advance(otherDoc);
+                    continue advanceLead;
+                }
+            }
+            return docId = doc;
+        }
+        return docId = NO_MORE_DOCS;
+    }
+
+    @Override
+    public int cost() { return lead.cost(); }
+}
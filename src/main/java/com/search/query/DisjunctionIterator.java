@@ -0,0 +1,62 @@
+package com.search.query;
+
+import java.util.List;
+
+import com.search.index.DocIdIterator;
+
+// Union of its iterators. A min-heap ordered by current doc holds the iterators that are not
+// exhausted; moving on only advances those sitting at the top, below the target.
+public final class DisjunctionIterator implements DocIdIterator {
+    private final DocIdIterator[] heap;
+    private final int cost;
+    private int size;
+    private int docId = -1;
+
+    public DisjunctionIterator(List<? extends DocIdIterator> iterators) {
+        this.heap = iterators.toArray(new DocIdIterator[0]);
+        this.size = heap.length;
+        long total = 0;
+        for(DocIdIterator iterator : heap) {
+            total += iterator.cost();
+        }
+        this.cost = (int) Math.min(total, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int docId() { return docId; }
+
+    @Override
+    public int nextDoc() {
+        return docId == NO_MORE_DOCS ? NO_MORE_DOCS : advance(docId + 1);
+    }
+
+    @Override
+    public int advance(int target) {
+        while(size > 0 && heap[0].docId() < target) {
+            if(heap[0].advance(target) == NO_MORE_DOCS) {
+                heap[0] = heap[--size];
+                heap[size] = null;
+            }
+            siftDown();
+        }
+        return docId = size == 0 ? NO_MORE_DOCS : heap[0].docId();
+    }
+
+    private void siftDown() {
+        int i = 0;
+        DocIdIterator moved = heap[0];
+        while(true) {
+            int child = 2 * i + 1;
+            if(child >= size) break;
+            if(child + 1 < size && heap[child + 1].docId() < heap[child].docId()) child++;
+            if(heap[child].docId() >= moved.docId()) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        if(size > 0) heap[i] = moved;
+    }
+
+    // Every clause may contribute its own matches
+    @Override
+    public int cost() { return cost; }
+}
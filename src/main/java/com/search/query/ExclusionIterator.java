@@ -0,0 +1,42 @@
+package com.search.query;
+
+import com.search.index.DocIdIterator;
+
+// Docs of 'include' that 'exclude' does not contain. 'exclude' is only advanced to the candidates
+// 'include' produces, so it never drives iteration.
+public final class ExclusionIterator implements DocIdIterator {
+    private final DocIdIterator include;
+    private final DocIdIterator exclude;
+    private int docId = -1;
+
+    public ExclusionIterator(DocIdIterator include, DocIdIterator exclude) {
+        this.include = include;
+        this.exclude = exclude;
+    }
+
+    @Override
+    public int docId() { return docId; }
+
+    @Override
+    public int nextDoc() {
+        return doNext(include.nextDoc());
+    }
+
+    @Override
+    public int advance(int target) {
+        return doNext(include.advance(target));
+    }
+
+    private int doNext(int doc) {
+        while(doc != NO_MORE_DOCS) {
+            int excluded = exclude.docId() < doc ? exclude.advance(doc) : exclude.docId();
+            if(excluded != doc) break;
+            doc = include.nextDoc();
+        }
+        return docId = doc;
+    }
+
+    // Exclusion can only drop matches
+    @Override
+    public int cost() { return include.cost(); }
+}
@@ -1,97 +1,218 @@
 package com.search.query;
 
-import com.search.index.InvertedIndex;
-import com.search.model.Document;
-import com.search.ranking.Ranker;
+import com.search.index.QueryContext;
+import com.search.model.DocumentInfo;
+import com.search.ranking.ScoredDoc;
+import com.search.ranking.TopKCollector;
 import com.search.segment.Segment;
-import com.search.segment.SegmentManager;
-import com.search.storage.DocumentRepository;
+import com.search.storage.DocumentStore;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class HybridQueryEngine {
 
     private static final int RRF_K = 60;
+    // Hits fused by RRF from each leg; deeper ranks would add at most 1/(RRF_K + 101) each
+    private static final int KEYWORD_CANDIDATES = 100;
+    private static final int SEMANTIC_CANDIDATES = 100;
+    // Budgets of the two legs, which run side by side; zero leaves a leg the query's whole deadline
+    private static final Duration KEYWORD_TIMEOUT = Duration.ofMillis(Long.getLong("search.hybrid.keyword.timeout.ms", 0));
+    private static final Duration SEMANTIC_TIMEOUT = Duration.ofMillis(Long.getLong("search.hybrid.semantic.timeout.ms", 0));
+    // Slack for a leg to notice its deadline and return what it has
+    private static final Duration AWAIT_GRACE = Duration.ofMillis(50);
+    private static final ExecutorService LEGS = Executors.newVirtualThreadPerTaskExecutor();
 
-    private final SegmentManager segmentManager;
+    private final SegmentSearcher segmentSearcher;
     private final QueryParser queryParser;
-    private final Ranker ranker;
     private final SemanticQueryEngine semanticQueryEngine;
-    private final DocumentRepository documentRepository;
+    private final DocumentStore documentStore;
+    private final QueryResultCache<HybridResult> cache;
 
-    public HybridQueryEngine(SegmentManager segmentManager,
+    public HybridQueryEngine(SegmentSearcher segmentSearcher,
                              QueryParser queryParser,
-                             Ranker ranker,
                              SemanticQueryEngine semanticQueryEngine,
-                             DocumentRepository documentRepository) {
-        this.segmentManager = segmentManager;
+                             DocumentStore documentStore) {
+        this(segmentSearcher, queryParser, semanticQueryEngine, documentStore, null);
+    }
+
+    // Fused pages are answered from 'cache' when it is not null
+    public HybridQueryEngine(SegmentSearcher segmentSearcher,
+                             QueryParser queryParser,
+                             SemanticQueryEngine semanticQueryEngine,
+                             DocumentStore documentStore,
+                             QueryResultCache<HybridResult> cache) {
+        this.segmentSearcher = segmentSearcher;
         this.queryParser = queryParser;
-        this.ranker = ranker;
         this.semanticQueryEngine = semanticQueryEngine;
-        this.documentRepository = documentRepository;
+        this.documentStore = documentStore;
+        this.cache = cache;
+    }
+
+    // Fused results ranked [offset, offset + limit)
+    public List<HybridResult> search(String query, int offset, int limit) {
+        return search(query, offset, limit, QueryContext.unbounded()).results();
+    }
+
+    // As above within the context's deadline. The keyword and semantic legs run concurrently, each
+    // within its own budget: a leg returns what it gathered when its budget or the deadline runs
+    // out, a semantic leg that has nothing by then is dropped in favour of keyword-only results,
+    // and such partial pages are not cached.
+    public HybridPage search(String query, int offset, int limit, QueryContext context) {
+        KeywordQuery keywordQuery = queryParser.parseQuery(query);
+        if (cache == null) {
+            return search(query, keywordQuery, null, offset, limit, context).page(limit);
+        }
+
+        // The semantic leg embeds the raw text, so it is part of the key alongside the parsed terms
+        QueryResultCache.Key key = new QueryResultCache.Key("hybrid", keywordQuery, query.strip().replaceAll("\\s+", " "), offset, limit);
+        long generation = segmentSearcher.generation();
+        List<HybridResult> cached = cache.get(key, generation);
+        if (cached != null) {
+            return new Ranked(cached, LegTiming.CACHED, LegTiming.CACHED, false).page(limit);
+        }
+
+        Ranked ranked = search(query, keywordQuery, null, offset, limit, context);
+        HybridPage page = ranked.page(limit);
+        // Keyword-only fallbacks are not cached: the semantic leg may well succeed next time.
+        // The lookahead result is cached too, so a cached page still knows whether it is the last.
+        if (page.isFused() && !context.isPartial()) {
+            cache.put(key, generation, ranked.results());
+        }
+        return page;
+    }
+
+    // The 'limit' fused results ranking strictly after 'after' (null for the first page), by
+    // descending RRF score and then ascending canonical id. Only hits in the legs' candidate
+    // lists are fused, so pages end once those run out (see HybridPage.candidateCap()). Cursor
+    // pages are not cached.
+    // When this page and the cursor's come from different rankings (one of them a keyword-only
+    // fallback), scores cannot be compared: the page continues after the cursor's document, and
+    // is empty with PageEnd.CURSOR_INVALID when that document is not in this ranking.
+    public HybridPage searchAfter(String query, SearchCursor after, int limit, QueryContext context) {
+        return search(query, queryParser.parseQuery(query), after, 0, limit, context).page(limit);
     }
 
-    public List<HybridResult> search(String query) {
-        List<String> terms = queryParser.parse(query);
+    private record SemanticLeg(List<SemanticQueryEngine.ScoredDocument> results, long nanos) {}
+
+    // A page's results plus, when more follow, the first result of the next page
+    private record Ranked(List<HybridResult> results, LegTiming keyword, LegTiming semantic, boolean cursorInvalid) {
+        HybridPage page(int limit) {
+            if (cursorInvalid) {
+                return new HybridPage(List.of(), keyword, semantic, PageEnd.CURSOR_INVALID);
+            }
+            return results.size() > limit
+                ? new HybridPage(results.subList(0, limit), keyword, semantic, PageEnd.MORE)
+                : new HybridPage(results, keyword, semantic, PageEnd.EXHAUSTED);
+        }
+    }
+
+    private Ranked search(String query, KeywordQuery keywordQuery, SearchCursor after, int offset, int limit,
+                          QueryContext context) {
+        QueryContext keywordContext = context.child(KEYWORD_TIMEOUT);
+        QueryContext semanticContext = context.child(SEMANTIC_TIMEOUT);
+        long start = System.nanoTime();
+
+        // 1. Semantic search, in the background; it spends most of its time waiting on the embedding request
+        CompletableFuture<SemanticLeg> semantic = CompletableFuture.supplyAsync(() -> new SemanticLeg(
+            semanticQueryEngine.search(query, SEMANTIC_CANDIDATES, semanticContext), System.nanoTime() - start), LEGS);
 
-        // 1. TF-IDF keyword search across segments
-        List<KeywordResult> keywordResults = keywordSearch(terms);
+        // 2. Keyword search across segments, meanwhile
+        List<KeywordResult> keywordResults = keywordSearch(keywordQuery, keywordContext);
+        LegTiming keywordTiming = new LegTiming(Duration.ofNanos(System.nanoTime() - start),
+            keywordContext.isPartial() ? LegStatus.PARTIAL : LegStatus.COMPLETE);
 
-        // 2. Semantic search
-        List<SemanticQueryEngine.ScoredDocument> semanticResults;
+        SemanticLeg semanticLeg;
         try {
-            semanticResults = semanticQueryEngine.search(query);
+            semanticLeg = await(semantic, semanticContext);
         } catch (Exception e) {
-            System.err.println("Warning: Semantic search failed, using keyword-only results. " + e.getMessage());
-            return keywordResults.stream()
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            // A leg cut off by its budget or the deadline leaves the results partial
+            if (!semanticContext.shouldStop()) {
+                Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                System.err.println("Warning: Semantic search failed, using keyword-only results. " + cause.getMessage());
+            }
+            List<HybridResult> keywordOnly = keywordResults.stream()
                 .map(kr -> new HybridResult(kr.canonicalDocId, kr.segment, kr.docId, kr.score, kr.title, kr.url))
                 .toList();
+            int from = after == null ? offset : skipThrough(keywordOnly, after, SearchCursor.Ranking.KEYWORD);
+            return new Ranked(page(keywordOnly, from, limit + 1), keywordTiming,
+                new LegTiming(Duration.ofNanos(System.nanoTime() - start), LegStatus.DROPPED), from < 0);
         }
+        LegTiming semanticTiming = new LegTiming(Duration.ofNanos(semanticLeg.nanos()),
+            semanticContext.isPartial() ? LegStatus.PARTIAL : LegStatus.COMPLETE);
 
         // 3. RRF merge
-        return mergeWithRRF(keywordResults, semanticResults, terms);
+        if (after != null && after.ranking() != SearchCursor.Ranking.FUSED) {
+            List<HybridResult> fused = mergeWithRRF(keywordResults, semanticLeg.results(), null, 0,
+                KEYWORD_CANDIDATES + SEMANTIC_CANDIDATES);
+            int from = skipThrough(fused, after, SearchCursor.Ranking.FUSED);
+            return new Ranked(page(fused, from, limit + 1), keywordTiming, semanticTiming, from < 0);
+        }
+        return new Ranked(mergeWithRRF(keywordResults, semanticLeg.results(), after, offset, limit + 1),
+            keywordTiming, semanticTiming, false);
     }
 
-    private List<KeywordResult> keywordSearch(List<String> terms) {
-        List<KeywordResult> results = new ArrayList<>();
-        Map<Integer, Document> canonicalDocs = documentRepository.loadCanonicalDocuments();
-
-        for (Segment segment : segmentManager.getSegments()) {
-            InvertedIndex index = segment.getIndex();
-            QueryExecutor executor = new QueryExecutor(index);
-            Set<Integer> matchingDocIds = executor.execute(terms);
-
-            if (matchingDocIds.isEmpty()) continue;
-
-            Map<Integer, Double> scores = ranker.rank(terms, index, segment.getDocuments().size());
-            Map<Integer, Integer> segDocMapping = new HashMap<>();
-
-            // Build reverse mapping: docId -> canonicalDocId
-            for (var entry : segment.getDocuments().entrySet()) {
-                Document doc = entry.getValue();
-                for (var canonEntry : canonicalDocs.entrySet()) {
-                    if (canonEntry.getValue().getUrl().equals(doc.getUrl())) {
-                        segDocMapping.put(entry.getKey(), canonEntry.getKey());
-                        break;
-                    }
-                }
-            }
+    private static List<HybridResult> page(List<HybridResult> ranked, int from, int limit) {
+        if (from < 0) return List.of();
+        return ranked.subList(Math.min(from, ranked.size()), Math.min(from + limit, ranked.size()));
+    }
 
-            for (int docId : matchingDocIds) {
-                double score = scores.getOrDefault(docId, 0.0);
-                Document doc = segment.getDocuments().get(docId);
-                int canonicalId = segDocMapping.getOrDefault(docId, -1);
-                results.add(new KeywordResult(canonicalId, segment, docId, score, doc.getTitle(), doc.getUrl()));
-            }
+    // Waits for the semantic leg no longer than its context allows. The leg polls the same context
+    // and bounds its embedding request by it, so it normally ends on its own; should it not, it is
+    // cancelled and given up on.
+    private static SemanticLeg await(CompletableFuture<SemanticLeg> semantic, QueryContext semanticContext)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        Duration remaining = semanticContext.remaining();
+        if (remaining == null) {
+            return semantic.get();
         }
+        try {
+            return semantic.get(remaining.toNanos() + AWAIT_GRACE.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            semanticContext.cancel();
+            semantic.cancel(false);
+            throw e;
+        }
+    }
+
+    // Where the page after the cursor starts in 'ranked', results of the given ranking in order:
+    // just past the cursor's document, else past the cursor's score when it comes from the same
+    // ranking, else (a score from the other ranking) -1: there is no place to continue from
+    private static int skipThrough(List<HybridResult> ranked, SearchCursor after, SearchCursor.Ranking ranking) {
+        for (int i = 0; i < ranked.size(); i++) {
+            if (ranked.get(i).canonicalDocId() == after.canonicalId()) return i + 1;
+        }
+        if (after.ranking() != ranking) return -1;
+        int skipped = 0;
+        while (skipped < ranked.size() && ranked.get(skipped).score() >= after.score()) {
+            skipped++;
+        }
+        return skipped;
+    }
 
-        results.sort(Comparator.comparingDouble(r -> -r.score));
+    private List<KeywordResult> keywordSearch(KeywordQuery keywordQuery, QueryContext context) {
+        List<KeywordResult> results = new ArrayList<>();
+
+        for (SegmentSearcher.Hit hit : segmentSearcher.topK(keywordQuery, 0, KEYWORD_CANDIDATES, context)) {
+            // The segment's doc id column names the canonical document; its metadata is resident
+            int canonicalId = hit.segment().canonicalId(hit.docId());
+            DocumentInfo doc = documentStore.info(canonicalId);
+            if (doc == null) continue;
+            results.add(new KeywordResult(canonicalId, hit.segment(), hit.docId(), hit.score(), doc.title(), doc.url()));
+        }
         return results;
     }
 
     private List<HybridResult> mergeWithRRF(List<KeywordResult> keywordResults,
                                              List<SemanticQueryEngine.ScoredDocument> semanticResults,
-                                             List<String> terms) {
+                                             SearchCursor after, int offset, int limit) {
         Map<Long, Double> rrfScores = new HashMap<>();
         Map<Long, KeywordResult> keywordMap = new HashMap<>();
 
@@ -112,27 +233,35 @@ public class HybridQueryEngine {
             semanticScoreMap.put(cid, sr.score());
         }
 
-        // Build hybrid results
-        Map<Integer, Document> canonicalDocs = documentRepository.loadCanonicalDocuments();
-        List<HybridResult> results = new ArrayList<>();
-
+        // Rank fused scores, then build hybrid results for the requested page only. Semantic-only
+        // hits without metadata are left out before ranking so they do not take up page slots.
+        TopKCollector top = new TopKCollector(offset + limit,
+            after == null ? null : new ScoredDoc(Math.toIntExact(after.canonicalId()), after.score()));
         for (var entry : rrfScores.entrySet()) {
             long cid = entry.getKey();
-            double rrfScore = entry.getValue();
+            if (!keywordMap.containsKey(cid) && documentStore.info((int) cid) == null) continue;
+            top.collect(Math.toIntExact(cid), entry.getValue());
+        }
+
+        int count = top.sort();
+        List<HybridResult> results = new ArrayList<>(Math.max(0, count - offset));
+
+        for (int rank = offset; rank < count; rank++) {
+            long cid = top.id(rank);
+            double rrfScore = top.score(rank);
 
             KeywordResult kr = keywordMap.get(cid);
             if (kr != null) {
                 results.add(new HybridResult(cid, kr.segment, kr.docId, rrfScore, kr.title, kr.url));
             } else {
                 // Only found via semantic search — no segment match
-                Document doc = canonicalDocs.get((int) cid);
+                DocumentInfo doc = documentStore.info((int) cid);
                 if (doc != null) {
-                    results.add(new HybridResult(cid, null, -1, rrfScore, doc.getTitle(), doc.getUrl()));
+                    results.add(new HybridResult(cid, null, -1, rrfScore, doc.title(), doc.url()));
                 }
             }
         }
 
-        results.sort(Comparator.comparingDouble(r -> -r.score));
         return results;
     }
 
@@ -155,4 +284,48 @@ public class HybridQueryEngine {
     }
 
     public record HybridResult(long canonicalDocId, Segment segment, int docId, double score, String title, String url) {}
+
+    public enum LegStatus {
+        // Every hit the leg looked for
+        COMPLETE,
+        // Stopped by its budget or the deadline; what it had was fused
+        PARTIAL,
+        // Failed or ran out of time with nothing to show; the page is keyword-only
+        DROPPED,
+        // The page came from the cache and the leg did not run
+        CACHED
+    }
+
+    // Wall time from the start of the search until the leg's hits were in hand (or it was given up
+    // on), and how it ended
+    public record LegTiming(Duration elapsed, LegStatus status) {
+        static final LegTiming CACHED = new LegTiming(Duration.ZERO, LegStatus.CACHED);
+    }
+
+    public enum PageEnd {
+        // Further results rank after this page
+        MORE,
+        // No result ranks after this page among the fused candidates, which number at most
+        // HybridPage.candidateCap()
+        EXHAUSTED,
+        // The cursor came from the other ranking and its document is not in this one; the page
+        // is empty and paging has to start over with a new search
+        CURSOR_INVALID
+    }
+
+    public record HybridPage(List<HybridResult> results, LegTiming keyword, LegTiming semantic, PageEnd end) {
+        // RRF scores, as opposed to a keyword-only fallback's keyword scores
+        public boolean isFused() {
+            return semantic.status() != LegStatus.DROPPED;
+        }
+
+        public boolean hasMore() {
+            return end == PageEnd.MORE;
+        }
+
+        // Most results the query can page through: each leg's candidate list is all that is fused
+        public int candidateCap() {
+            return isFused() ? KEYWORD_CANDIDATES + SEMANTIC_CANDIDATES : KEYWORD_CANDIDATES;
+        }
+    }
 }
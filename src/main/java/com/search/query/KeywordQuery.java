@@ -0,0 +1,90 @@
+package com.search.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.search.index.PositionConstraint;
+
+// Parsed keyword query. 'terms' are the positive (not excluded) terms in query order; they score
+// every match. When the tree is a plain conjunction, 'constraints' hold its phrases and NEARs as
+// constraints over 'terms' and the query runs on the block-max conjunction. A plain disjunction of
+// terms runs on the block-max disjunction; any other tree is compiled into an iterator tree and
+// 'constraints' is empty.
+public record KeywordQuery(QueryNode root, List<String> terms, List<PositionConstraint> constraints) {
+
+    public static KeywordQuery of(QueryNode root) {
+        List<String> terms = new ArrayList<>();
+        List<PositionConstraint> constraints = new ArrayList<>();
+        flatten(root, terms, constraints);
+        return new KeywordQuery(root, List.copyOf(terms), isConjunctive(root) ? List.copyOf(constraints) : List.of());
+    }
+
+    public boolean isConjunctive() {
+        return isConjunctive(root);
+    }
+
+    // Plain terms under a single Or: no exclusions, phrases, NEARs or expanded terms, so block-max
+    // disjunctive top-k applies
+    public boolean isDisjunctive() {
+        return root instanceof QueryNode.Or or && or.clauses().stream().allMatch(QueryNode.Term.class::isInstance);
+    }
+
+    public boolean isPositional() {
+        return !constraints.isEmpty();
+    }
+
+    // Term, phrase and NEAR leaves, alone or under a single And
+    static boolean isConjunctive(QueryNode node) {
+        if(node instanceof QueryNode.And and) {
+            return and.clauses().stream().allMatch(KeywordQuery::isLeaf);
+        }
+        return isLeaf(node);
+    }
+
+    private static boolean isLeaf(QueryNode node) {
+        return node instanceof QueryNode.Term || node instanceof QueryNode.Phrase || node instanceof QueryNode.Near;
+    }
+
+    // Appends the positive terms under 'node' and, for its phrases and NEARs, constraints over
+    // their indexes in 'terms'. Every occurrence gets its own slot, so no two constraints share
+    // a postings iterator's occurrences.
+    static void flatten(QueryNode node, List<String> terms, List<PositionConstraint> constraints) {
+        switch(node) {
+            case QueryNode.Term term -> terms.add(term.term());
+            // Expanded per segment, where its terms are known
+            case QueryNode.Wildcard wildcard -> { }
+            case QueryNode.Fuzzy fuzzy -> { }
+            case QueryNode.Phrase phrase -> {
+                int first = terms.size();
+                terms.addAll(phrase.terms());
+                if(phrase.terms().size() > 1) {
+                    int[] termIndexes = new int[phrase.terms().size()];
+                    int[] relativePositions = new int[termIndexes.length];
+                    for(int i = 0; i < termIndexes.length; i++) {
+                        termIndexes[i] = first + i;
+                        relativePositions[i] = phrase.positions().get(i);
+                    }
+                    constraints.add(PositionConstraint.phrase(termIndexes, relativePositions));
+                }
+            }
+            case QueryNode.Near near -> {
+                flatten(near.left(), terms, constraints);
+                int left = terms.size() - 1;
+                int right = terms.size();
+                flatten(near.right(), terms, constraints);
+                constraints.add(PositionConstraint.near(left, right, near.distance()));
+            }
+            case QueryNode.And and -> {
+                for(QueryNode clause : and.clauses()) {
+                    flatten(clause, terms, constraints);
+                }
+            }
+            case QueryNode.Or or -> {
+                for(QueryNode clause : or.clauses()) {
+                    flatten(clause, terms, constraints);
+                }
+            }
+            case QueryNode.Not not -> { }
+        }
+    }
+}
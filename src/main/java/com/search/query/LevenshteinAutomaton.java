@@ -0,0 +1,146 @@
+package com.search.query;
+
+import com.search.index.IndexReader;
+
+// Accepts the strings within maxEdits insertions, deletions or substitutions of 'term'. The
+// automaton's nondeterministic states are simulated bit-parallel: for every edit count e, bit i of
+// a long is set when the input read so far matches the first i characters of 'term' with at most e
+// edits. A transition is a handful of shifts and ORs per edit count, so there is no DFA to build.
+public final class LevenshteinAutomaton {
+    // Bits 0..length of a state must fit in a long
+    public static final int MAX_LENGTH = 62;
+
+    public interface Match {
+        void accept(int termId, int distance);
+    }
+
+    private final String term;
+    private final int maxEdits;
+    private final long full;
+    // Bit i + 1 set where term.charAt(i) == c, for ASCII c; other characters are looked up in 'term'
+    private final long[] asciiMasks = new long[128];
+
+    public LevenshteinAutomaton(String term, int maxEdits) {
+        if(term.length() > MAX_LENGTH) {
+            throw new IllegalArgumentException("Fuzzy terms are limited to " + MAX_LENGTH + " characters: " + term);
+        }
+        if(maxEdits < 0) {
+            throw new IllegalArgumentException("maxEdits must not be negative: " + maxEdits);
+        }
+        this.term = term;
+        this.maxEdits = maxEdits;
+        this.full = (1L << (term.length() + 1)) - 1;
+        for(int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            if(c < 128) asciiMasks[c] |= 1L << (i + 1);
+        }
+    }
+
+    // Calls 'match' with every term of 'index' the automaton accepts, in term id order, and its
+    // edit distance. Terms are walked in dictionary order so consecutive terms reuse the states of
+    // their shared prefix; once a prefix leaves the automaton with no live state, every term below
+    // it is skipped with one ceiling lookup instead of being visited.
+    public void intersect(IndexReader index, Match match) {
+        int termCount = index.termCount();
+        // states[d] is the state after the first d characters of 'previous'; valid up to 'depth'
+        long[][] states = new long[term.length() + maxEdits + 2][];
+        states[0] = start();
+        String previous = "";
+        int depth = 0;
+
+        int termId = 0;
+        while(termId < termCount) {
+            String candidate = index.term(termId);
+            int d = Math.min(depth, sharedPrefix(previous, candidate));
+            boolean dead = false;
+            for(; d < candidate.length(); d++) {
+                if(d + 1 == states.length) {
+                    // Longer than term + maxEdits, so already dead
+                    dead = true;
+                    break;
+                }
+                if(states[d + 1] == null) states[d + 1] = new long[maxEdits + 1];
+                if(!step(states[d], candidate.charAt(d), states[d + 1])) {
+                    dead = true;
+                    break;
+                }
+            }
+            previous = candidate;
+            depth = d;
+
+            if(!dead) {
+                int distance = distance(states[d]);
+                if(distance >= 0) match.accept(termId, distance);
+                termId++;
+            } else {
+                termId = skip(index, candidate, d, termId);
+            }
+        }
+    }
+
+    // Edit distance of 'candidate' to the term, -1 when it exceeds maxEdits
+    public int distance(String candidate) {
+        long[] state = start();
+        long[] next = new long[maxEdits + 1];
+        for(int i = 0; i < candidate.length(); i++) {
+            if(!step(state, candidate.charAt(i), next)) return -1;
+            long[] swap = state;
+            state = next;
+            next = swap;
+        }
+        return distance(state);
+    }
+
+    // Before any input, the first e characters can only have been deleted
+    private long[] start() {
+        long[] state = new long[maxEdits + 1];
+        for(int e = 0; e <= maxEdits; e++) {
+            state[e] = ((1L << (e + 1)) - 1) & full;
+        }
+        return state;
+    }
+
+    // Reads 'c'; returns false when no state is left alive. A live state can always still accept
+    // (by reading the rest of the term), so a dead prefix is exactly one no extension matches.
+    private boolean step(long[] state, char c, long[] next) {
+        long mask = c < 128 ? asciiMasks[c] : mask(c);
+        long live = next[0] = (state[0] << 1) & mask;
+        for(int e = 1; e <= maxEdits; e++) {
+            // match | insertion of c | substitution by c | deletion of a term character
+            next[e] = (((state[e] << 1) & mask) | state[e - 1] | (state[e - 1] << 1) | (next[e - 1] << 1)) & full;
+            live |= next[e];
+        }
+        return live != 0;
+    }
+
+    private int distance(long[] state) {
+        for(int e = 0; e <= maxEdits; e++) {
+            if((state[e] >>> term.length() & 1) != 0) return e;
+        }
+        return -1;
+    }
+
+    private long mask(char c) {
+        long mask = 0;
+        for(int i = term.indexOf(c); i >= 0; i = term.indexOf(c, i + 1)) {
+            mask |= 1L << (i + 1);
+        }
+        return mask;
+    }
+
+    // First term id past every term starting with candidate[0..dead]. Char order matches the
+    // dictionary's UTF-8 order outside surrogate pairs, which the tokenizer never produces.
+    private static int skip(IndexReader index, String candidate, int dead, int termId) {
+        char c = candidate.charAt(dead);
+        if(c == Character.MAX_VALUE) return termId + 1;
+        String successor = candidate.substring(0, dead) + (char) (c + 1);
+        return Math.max(termId + 1, index.ceilingTermId(successor));
+    }
+
+    private static int sharedPrefix(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while(i < n && a.charAt(i) == b.charAt(i)) i++;
+        return i;
+    }
+}
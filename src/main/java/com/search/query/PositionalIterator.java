@@ -0,0 +1,53 @@
+package com.search.query;
+
+import java.util.List;
+
+import com.search.index.DocIdIterator;
+import com.search.index.PositionConstraint;
+import com.search.index.PostingsIterator;
+
+// Narrows a doc-level conjunction over 'postings' to the docs satisfying every position
+// constraint. Positions are only read for docs the conjunction already matched.
+public final class PositionalIterator implements DocIdIterator {
+    private final DocIdIterator conjunction;
+    private final PostingsIterator[] postings;
+    private final PositionConstraint[] constraints;
+    private int docId = -1;
+
+    public PositionalIterator(DocIdIterator conjunction, PostingsIterator[] postings, List<PositionConstraint> constraints) {
+        this.conjunction = conjunction;
+        this.postings = postings;
+        this.constraints = constraints.toArray(new PositionConstraint[0]);
+    }
+
+    @Override
+    public int docId() { return docId; }
+
+    @Override
+    public int nextDoc() {
+        return doNext(conjunction.nextDoc());
+    }
+
+    @Override
+    public int advance(int target) {
+        return doNext(conjunction.advance(target));
+    }
+
+    private int doNext(int doc) {
+        while(doc != NO_MORE_DOCS && !matches()) {
+            doc = conjunction.nextDoc();
+        }
+        return docId = doc;
+    }
+
+    private boolean matches() {
+        for(PositionConstraint constraint : constraints) {
+            if(!constraint.matches(postings)) return false;
+        }
+        return true;
+    }
+
+    // Only the conjunction's cost is known; position checks can only reduce the matches
+    @Override
+    public int cost() { return conjunction.cost(); }
+}
@@ -1,30 +1,187 @@
 package com.search.query;
 
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
+import java.util.function.ToIntFunction;
 
-import com.search.index.InvertedIndex;
+import com.search.index.DocIdIterator;
+import com.search.index.FilterCache;
+import com.search.index.IndexReader;
+import com.search.index.PositionConstraint;
+import com.search.index.PostingsIterator;
+import com.search.index.QueryContext;
+import com.search.index.RoaringDocIdSet;
+import com.search.ranking.TopKCollector;
 
 public class QueryExecutor {
-    private final InvertedIndex index;
+    // Cap on the terms one wildcard or fuzzy term expands to in a segment
+    private static final int MAX_EXPANSIONS = Integer.getInteger("search.query.max.expansions", 64);
 
-    public QueryExecutor(InvertedIndex index) {
+    // Receives a term a wildcard or fuzzy term expanded to, with the weight its score gets
+    public interface Expansion {
+        void accept(int termId, double weight);
+    }
+
+    private final IndexReader index;
+    private final int segmentId;
+    private final int totalDocs;
+    private final FilterCache filterCache;
+    private final QueryContext context;
+
+    // Dense terms cached in 'filterCache' (under segmentId) are intersected as bitmaps up front.
+    // Wildcards stop scanning the dictionary once 'context' says stop.
+    public QueryExecutor(IndexReader index, int segmentId, int totalDocs, FilterCache filterCache, QueryContext context) {
         this.index = index;
+        this.segmentId = segmentId;
+        this.totalDocs = totalDocs;
+        this.filterCache = filterCache;
+        this.context = context;
     }
 
-    public Set<Integer> execute(List<String> terms) {
-        Set<Integer> resultDocIds = new HashSet<>();
+    // Streams the docs containing every term, driven by the rarest term. Term ids are the
+    // index's own; a term missing from the segment (-1) short-circuits to an empty result.
+    public DocIdIterator execute(int[] termIds) {
+        return execute(termIds, List.of());
+    }
+
+    // As execute(termIds), keeping only docs that satisfy every constraint. Constraints refer to
+    // terms by their index in termIds.
+    public DocIdIterator execute(int[] termIds, List<PositionConstraint> constraints) {
+        if(termIds.length == 0) {
+            return PostingsIterator.empty();
+        }
+
+        List<PostingsIterator> postings = new ArrayList<>(termIds.length);
+        for(int termId : termIds) {
+            if(termId < 0) {
+                return PostingsIterator.empty();
+            }
+            postings.add(index.postings(termId));
+        }
 
-        terms.forEach(term -> {
-            Set<Integer> docIds = index.getPostings(term).keySet();
-            if(resultDocIds.isEmpty()) {
-                resultDocIds.addAll(docIds);
+        List<DocIdIterator> iterators = new ArrayList<>(postings);
+        RoaringDocIdSet filter = filterCache == null ? null : filterCache.filter(segmentId, index, termIds, totalDocs);
+        if(filter != null) {
+            iterators.add(filter.iterator());
+        }
+        DocIdIterator conjunction = iterators.size() == 1 ? iterators.get(0) : new ConjunctionIterator(iterators);
+        if(constraints.isEmpty()) {
+            return conjunction;
+        }
+        return new PositionalIterator(conjunction, postings.toArray(new PostingsIterator[0]), constraints);
+    }
+
+    // Compiles a query tree into lazy iterators: Ands into leapfrog conjunctions led by their
+    // cheapest clause (clause cost is df for terms), Ors into heap disjunctions, Not clauses into
+    // exclusions that are only probed at the And's candidates. 'termIds' maps a term to this
+    // index's id, -1 if absent.
+    public DocIdIterator execute(QueryNode root, ToIntFunction<String> termIds) {
+        return execute(root, termIds, (termId, weight) -> {});
+    }
+
+    // As execute(root, termIds), also reporting the ids wildcard and fuzzy terms expand to outside
+    // of Not clauses, so the caller can score them
+    public DocIdIterator execute(QueryNode root, ToIntFunction<String> termIds, Expansion expanded) {
+        return switch(root) {
+            case QueryNode.Term term -> execute(new int[] { termIds.applyAsInt(term.term()) });
+            case QueryNode.Wildcard wildcard -> executeWildcard(wildcard, expanded);
+            case QueryNode.Fuzzy fuzzy -> executeFuzzy(fuzzy, expanded);
+            case QueryNode.Phrase phrase -> executeLeaf(phrase, termIds);
+            case QueryNode.Near near -> executeLeaf(near, termIds);
+            case QueryNode.And and -> executeAnd(and, termIds, expanded);
+            case QueryNode.Or or -> {
+                List<DocIdIterator> clauses = new ArrayList<>(or.clauses().size());
+                for(QueryNode clause : or.clauses()) {
+                    DocIdIterator iterator = execute(clause, termIds, expanded);
+                    if(iterator.cost() > 0) clauses.add(iterator);
+                }
+                yield disjunction(clauses);
+            }
+            // Nothing to subtract from outside an And
+            case QueryNode.Not not -> PostingsIterator.empty();
+        };
+    }
+
+    private DocIdIterator executeAnd(QueryNode.And and, ToIntFunction<String> termIds, Expansion expanded) {
+        List<DocIdIterator> required = new ArrayList<>();
+        List<DocIdIterator> prohibited = new ArrayList<>();
+        for(QueryNode clause : and.clauses()) {
+            if(clause instanceof QueryNode.Not not) {
+                DocIdIterator iterator = execute(not.clause(), termIds);
+                if(iterator.cost() > 0) prohibited.add(iterator);
             } else {
-                resultDocIds.retainAll(docIds);
+                DocIdIterator iterator = execute(clause, termIds, expanded);
+                if(iterator.cost() == 0) return PostingsIterator.empty();
+                required.add(iterator);
+            }
+        }
+        if(required.isEmpty()) {
+            return PostingsIterator.empty();
+        }
+
+        DocIdIterator conjunction = required.size() == 1 ? required.get(0) : new ConjunctionIterator(required);
+        if(prohibited.isEmpty()) {
+            return conjunction;
+        }
+        return new ExclusionIterator(conjunction, disjunction(prohibited));
+    }
+
+    // Phrases and NEARs run as one positional conjunction over their own terms
+    private DocIdIterator executeLeaf(QueryNode leaf, ToIntFunction<String> termIds) {
+        List<String> terms = new ArrayList<>();
+        List<PositionConstraint> constraints = new ArrayList<>();
+        KeywordQuery.flatten(leaf, terms, constraints);
+        return execute(terms.stream().mapToInt(termIds).toArray(), constraints);
+    }
+
+    // Scans the dictionary range of the pattern's literal prefix and keeps the MAX_EXPANSIONS
+    // matching terms with the highest df
+    private DocIdIterator executeWildcard(QueryNode.Wildcard wildcard, Expansion expanded) {
+        String prefix = wildcard.prefix();
+        TopKCollector top = new TopKCollector(MAX_EXPANSIONS);
+        int first = index.ceilingTermId(prefix);
+        for(int termId = first; termId < index.termCount(); termId++) {
+            if(((termId - first + 1) & QueryContext.CHECK_MASK) == 0 && context.shouldStop()) break;
+            String term = index.term(termId);
+            if(!term.startsWith(prefix)) break;
+            if(wildcard.matches(term)) {
+                top.collect(termId, index.docFreq(termId));
             }
+        }
+
+        int count = top.sort();
+        List<DocIdIterator> clauses = new ArrayList<>(count);
+        for(int rank = 0; rank < count; rank++) {
+            expanded.accept(top.id(rank), 1.0);
+            clauses.add(index.postings(top.id(rank)));
+        }
+        return disjunction(clauses);
+    }
+
+    // Intersects a Levenshtein automaton with the dictionary and keeps the MAX_EXPANSIONS closest
+    // terms, the most frequent first among equally close ones. A term 'distance' edits away scores
+    // with weight 1 - distance / (length + 1), so exact matches outrank corrections.
+    private DocIdIterator executeFuzzy(QueryNode.Fuzzy fuzzy, Expansion expanded) {
+        int maxEdits = fuzzy.maxEdits();
+        TopKCollector top = new TopKCollector(MAX_EXPANSIONS);
+        // Closeness in the integer part, df / (df + 1) < 1 breaking ties
+        new LevenshteinAutomaton(fuzzy.term(), maxEdits).intersect(index, (termId, distance) -> {
+            double df = index.docFreq(termId);
+            top.collect(termId, (maxEdits - distance) + df / (df + 1));
         });
 
-        return resultDocIds;
+        int count = top.sort();
+        List<DocIdIterator> clauses = new ArrayList<>(count);
+        for(int rank = 0; rank < count; rank++) {
+            int distance = maxEdits - (int) top.score(rank);
+            expanded.accept(top.id(rank), 1.0 - distance / (fuzzy.term().length() + 1.0));
+            clauses.add(index.postings(top.id(rank)));
+        }
+        return disjunction(clauses);
+    }
+
+    private static DocIdIterator disjunction(List<DocIdIterator> clauses) {
+        if(clauses.isEmpty()) return PostingsIterator.empty();
+        return clauses.size() == 1 ? clauses.get(0) : new DisjunctionIterator(clauses);
     }
 }
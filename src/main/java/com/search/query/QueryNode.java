@@ -0,0 +1,71 @@
+package com.search.query;
+
+import java.util.List;
+
+// Parsed keyword query tree. Leaves hold normalized terms as the index stores them.
+public sealed interface QueryNode {
+
+    record Term(String term) implements QueryNode {}
+
+    // Terms matching 'pattern', where '*' stands for any run of characters and '?' for exactly
+    // one. The pattern starts with at least one literal character, which bounds the dictionary
+    // range to scan.
+    record Wildcard(String pattern) implements QueryNode {
+
+        public String prefix() {
+            int end = 0;
+            while(end < pattern.length() && pattern.charAt(end) != '*' && pattern.charAt(end) != '?') end++;
+            return pattern.substring(0, end);
+        }
+
+        // Greedy glob match that backtracks to the last '*' on a mismatch
+        public boolean matches(String term) {
+            int p = 0;
+            int t = 0;
+            int star = -1;
+            int mark = 0;
+            while(t < term.length()) {
+                if(p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == term.charAt(t))) {
+                    p++;
+                    t++;
+                } else if(p < pattern.length() && pattern.charAt(p) == '*') {
+                    star = p++;
+                    mark = t;
+                } else if(star >= 0) {
+                    p = star + 1;
+                    t = ++mark;
+                } else {
+                    return false;
+                }
+            }
+            while(p < pattern.length() && pattern.charAt(p) == '*') p++;
+            return p == pattern.length();
+        }
+    }
+
+    // Terms within 'maxEdits' insertions, deletions or substitutions of 'term'
+    record Fuzzy(String term, int maxEdits) implements QueryNode {
+
+        // Edits allowed when none are given: none for very short terms, where one edit is most
+        // of the word, one up to five characters and two beyond
+        public static int defaultEdits(String term) {
+            return term.length() < 3 ? 0 : term.length() < 6 ? 1 : 2;
+        }
+    }
+
+    // 'positions' are relative to the first term, so stop word gaps are kept
+    record Phrase(List<String> terms, List<Integer> positions) implements QueryNode {}
+
+    // Both sides match and the last term of 'left' occurs within 'distance' positions of the
+    // first term of 'right'. Sides are terms, phrases, nested NEARs or single multi-term words.
+    record Near(QueryNode left, QueryNode right, int distance) implements QueryNode {}
+
+    // Every clause matches; Not clauses exclude instead. An And without positive clauses
+    // matches nothing.
+    record And(List<QueryNode> clauses) implements QueryNode {}
+
+    record Or(List<QueryNode> clauses) implements QueryNode {}
+
+    // Only meaningful as a clause of an And
+    record Not(QueryNode clause) implements QueryNode {}
+}
@@ -1,17 +1,278 @@
 package com.search.query;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import com.search.model.Token;
 import com.search.processing.TextProcessor;
 
+// Keyword syntax on top of plain terms (adjacent clauses are ANDed):
+//   "quoted words"     phrase: the words must appear in this order, stop word gaps included
+//   photo*, colo?r     prefix and wildcard terms ('*' any run, '?' one character); a trailing
+//                      '?' is punctuation, and a pattern must start with a literal character
+//   colour~1, colour~  fuzzy terms within 1 or 2 edits; without a number, by term length
+//   left NEAR/n right  proximity: the words must appear within n positions of each other
+//   a OR b, a AND b    disjunction and explicit conjunction; AND binds tighter than OR
+//   NOT a, -a, +a      exclusion and (redundant) requirement
+//   ( ... )            grouping
+// Operators are upper case only. Malformed input never fails: unbalanced parentheses are closed
+// or ignored, and operators without operands are dropped.
 public class QueryParser {
+    private static final Pattern LEXEME = Pattern.compile("\"([^\"]*)\"?|([()])|([^\\s()\"]+)");
+    private static final Pattern NEAR = Pattern.compile("NEAR/(\\d+)");
+    private static final Pattern FUZZY = Pattern.compile("([^~]+)~(\\d*)");
+    // More than two edits match too much of the dictionary to be useful
+    private static final int MAX_EDITS = 2;
+
+    private enum Kind { WORD, PHRASE, OPEN, CLOSE, AND, OR, NOT, REQUIRED, NEAR }
+
+    private record Lexeme(Kind kind, String text, int distance) {}
+
     private final TextProcessor textProcessor = new TextProcessor();
 
     public List<String> parse(String query) {
-        return textProcessor.process(query)
-                            .stream()
-                            .map(Token::getTerm)
-                            .toList();
+        return parseQuery(query).terms();
+    }
+
+    public KeywordQuery parseQuery(String query) {
+        return KeywordQuery.of(new Parser(lex(query)).parse());
+    }
+
+    private static List<Lexeme> lex(String query) {
+        List<Lexeme> lexemes = new ArrayList<>();
+        Matcher matcher = LEXEME.matcher(query);
+        while(matcher.find()) {
+            if(matcher.group(1) != null) {
+                lexemes.add(new Lexeme(Kind.PHRASE, matcher.group(1), 0));
+            } else if(matcher.group(2) != null) {
+                lexemes.add(new Lexeme(matcher.group(2).equals("(") ? Kind.OPEN : Kind.CLOSE, null, 0));
+            } else {
+                String word = matcher.group(3);
+                Matcher near = NEAR.matcher(word);
+                if(near.matches()) {
+                    lexemes.add(new Lexeme(Kind.NEAR, null, Integer.parseInt(near.group(1))));
+                    continue;
+                }
+                switch(word) {
+                    case "AND" -> lexemes.add(new Lexeme(Kind.AND, null, 0));
+                    case "OR" -> lexemes.add(new Lexeme(Kind.OR, null, 0));
+                    case "NOT" -> lexemes.add(new Lexeme(Kind.NOT, null, 0));
+                    default -> {
+                        char prefix = word.charAt(0);
+                        if(prefix == '-' || prefix == '+') {
+                            lexemes.add(new Lexeme(prefix == '-' ? Kind.NOT : Kind.REQUIRED, null, 0));
+                            word = word.substring(1);
+                        }
+                        if(!word.isEmpty()) {
+                            lexemes.add(new Lexeme(Kind.WORD, word, 0));
+                        }
+                    }
+                }
+            }
+        }
+        return lexemes;
+    }
+
+    // Recursive descent; a method returns null when its clause normalizes to nothing (e.g. only
+    // stop words), and such clauses are left out of their parent
+    private final class Parser {
+        private final List<Lexeme> lexemes;
+        private int pos;
+
+        Parser(List<Lexeme> lexemes) {
+            this.lexemes = lexemes;
+        }
+
+        QueryNode parse() {
+            List<QueryNode> clauses = new ArrayList<>();
+            while(pos < lexemes.size()) {
+                add(clauses, parseOr());
+                // Only an unmatched ')' stops parseOr early
+                if(pos < lexemes.size()) pos++;
+            }
+            QueryNode root = and(clauses);
+            return root != null ? root : new QueryNode.And(List.of());
+        }
+
+        private QueryNode parseOr() {
+            List<QueryNode> clauses = new ArrayList<>();
+            add(clauses, parseAnd());
+            while(peek(Kind.OR)) {
+                pos++;
+                add(clauses, parseAnd());
+            }
+            return or(clauses);
+        }
+
+        private QueryNode parseAnd() {
+            List<QueryNode> clauses = new ArrayList<>();
+            while(pos < lexemes.size() && !peek(Kind.OR) && !peek(Kind.CLOSE)) {
+                if(peek(Kind.AND)) {
+                    pos++;
+                    continue;
+                }
+                add(clauses, parseUnary());
+            }
+            return and(clauses);
+        }
+
+        private QueryNode parseUnary() {
+            if(peek(Kind.NOT)) {
+                pos++;
+                QueryNode clause = parseUnary();
+                if(clause == null) return null;
+                return clause instanceof QueryNode.Not not ? not.clause() : new QueryNode.Not(clause);
+            }
+            if(peek(Kind.REQUIRED)) {
+                pos++;
+                return parseUnary();
+            }
+            return parseNear();
+        }
+
+        private QueryNode parseNear() {
+            QueryNode left = parsePrimary();
+            while(peek(Kind.NEAR)) {
+                int distance = lexemes.get(pos++).distance();
+                QueryNode right = parsePrimary();
+                if(right == null) continue;
+                if(left == null) {
+                    left = right;
+                } else if(isNearOperand(left) && isNearOperand(right)) {
+                    left = new QueryNode.Near(left, right, distance);
+                } else {
+                    left = and(List.of(left, right));
+                }
+            }
+            return left;
+        }
+
+        private QueryNode parsePrimary() {
+            if(pos >= lexemes.size() || peek(Kind.OR) || peek(Kind.CLOSE)) return null;
+
+            Lexeme lexeme = lexemes.get(pos++);
+            return switch(lexeme.kind()) {
+                case OPEN -> {
+                    QueryNode group = parseOr();
+                    if(peek(Kind.CLOSE)) pos++;
+                    yield group;
+                }
+                case PHRASE -> phrase(textProcessor.process(lexeme.text()));
+                case WORD -> word(lexeme.text());
+                // An operator where an operand belongs has nothing to apply to
+                default -> null;
+            };
+        }
+
+        private QueryNode word(String text) {
+            if(isWildcard(text)) return wildcard(text);
+            Matcher fuzzy = FUZZY.matcher(text);
+            if(fuzzy.matches()) {
+                List<Token> tokens = textProcessor.process(fuzzy.group(1));
+                return fuzzy.group(2).isEmpty() ? fuzzy(tokens, -1) : fuzzy(tokens, parseEdits(fuzzy.group(2)));
+            }
+            return QueryParser.word(textProcessor.process(text));
+        }
+
+        private boolean peek(Kind kind) {
+            return pos < lexemes.size() && lexemes.get(pos).kind() == kind;
+        }
+    }
+
+    private static boolean isWildcard(String word) {
+        String pattern = stripQuestionMarks(word);
+        return pattern.indexOf('*') >= 0 || pattern.indexOf('?') >= 0;
+    }
+
+    private static QueryNode wildcard(String word) {
+        QueryNode.Wildcard wildcard = new QueryNode.Wildcard(stripQuestionMarks(word).toLowerCase(Locale.ROOT));
+        return wildcard.prefix().isEmpty() ? null : wildcard;
+    }
+
+    // Every part of a word the tokenizer splits is fuzzy; maxEdits -1 picks the default per part
+    private static QueryNode fuzzy(List<Token> tokens, int maxEdits) {
+        List<QueryNode> terms = new ArrayList<>(tokens.size());
+        for(Token token : tokens) {
+            String term = token.getTerm();
+            int edits = Math.min(maxEdits < 0 ? QueryNode.Fuzzy.defaultEdits(term) : maxEdits, term.length() - 1);
+            terms.add(edits <= 0 || term.length() > LevenshteinAutomaton.MAX_LENGTH
+                ? new QueryNode.Term(term)
+                : new QueryNode.Fuzzy(term, edits));
+        }
+        return and(terms);
+    }
+
+    private static int parseEdits(String digits) {
+        return digits.length() > 1 ? MAX_EDITS : Math.min(MAX_EDITS, Integer.parseInt(digits));
+    }
+
+    // A '?' ending a word is a question mark, not a wildcard
+    private static String stripQuestionMarks(String word) {
+        int end = word.length();
+        while(end > 0 && word.charAt(end - 1) == '?') end--;
+        return word.substring(0, end);
+    }
+
+    private static QueryNode phrase(List<Token> tokens) {
+        if(tokens.size() <= 1) return word(tokens);
+
+        List<String> terms = new ArrayList<>(tokens.size());
+        List<Integer> positions = new ArrayList<>(tokens.size());
+        for(Token token : tokens) {
+            terms.add(token.getTerm());
+            positions.add(token.getPosition() - tokens.get(0).getPosition());
+        }
+        return new QueryNode.Phrase(List.copyOf(terms), List.copyOf(positions));
+    }
+
+    // A word the tokenizer splits (e.g. at punctuation) requires all of its parts
+    private static QueryNode word(List<Token> tokens) {
+        List<QueryNode> terms = new ArrayList<>(tokens.size());
+        for(Token token : tokens) {
+            terms.add(new QueryNode.Term(token.getTerm()));
+        }
+        return and(terms);
+    }
+
+    private static boolean isNearOperand(QueryNode node) {
+        if(node instanceof QueryNode.And and) {
+            return and.clauses().stream().allMatch(QueryNode.Term.class::isInstance);
+        }
+        return node instanceof QueryNode.Term || node instanceof QueryNode.Phrase || node instanceof QueryNode.Near;
+    }
+
+    private static void add(List<QueryNode> clauses, QueryNode clause) {
+        if(clause != null) clauses.add(clause);
+    }
+
+    // Nested Ands are flattened; a single positive clause stands for itself
+    private static QueryNode and(List<QueryNode> clauses) {
+        List<QueryNode> flat = new ArrayList<>(clauses.size());
+        for(QueryNode clause : clauses) {
+            if(clause instanceof QueryNode.And and) {
+                flat.addAll(and.clauses());
+            } else {
+                flat.add(clause);
+            }
+        }
+        if(flat.isEmpty()) return null;
+        if(flat.size() == 1 && !(flat.get(0) instanceof QueryNode.Not)) return flat.get(0);
+        return new QueryNode.And(List.copyOf(flat));
+    }
+
+    private static QueryNode or(List<QueryNode> clauses) {
+        List<QueryNode> flat = new ArrayList<>(clauses.size());
+        for(QueryNode clause : clauses) {
+            if(clause instanceof QueryNode.Or or) {
+                flat.addAll(or.clauses());
+            } else {
+                flat.add(clause);
+            }
+        }
+        if(flat.isEmpty()) return null;
+        return flat.size() == 1 ? flat.get(0) : new QueryNode.Or(List.copyOf(flat));
     }
 }
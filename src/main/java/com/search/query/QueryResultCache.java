@@ -0,0 +1,114 @@
+package com.search.query;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+// Byte-weighted LRU cache of ranked result pages. Every entry is stamped with the segment
+// generation it was computed against, and the first lookup or insert under a newer generation
+// drops every older entry, so results are never served across addSegment, merge or clear and
+// the segments (and mapped files) they reference are not kept reachable.
+public final class QueryResultCache<T> {
+
+    public record Stats(long hits, long misses, long stale, long evictions, int entries, long bytes, long maxBytes) {
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+    }
+
+    // 'text' carries whatever else the results depend on besides the parsed query (the raw query
+    // for the semantic leg); null when the parsed query is all there is
+    public record Key(String mode, KeywordQuery query, String text, int offset, int limit) {}
+
+    private record Entry<T>(long generation, List<T> results, long weight) {}
+
+    // Rough object overheads: map node + key + entry, and the list slot of each result
+    private static final long ENTRY_BYTES = 160;
+    private static final long TERM_BYTES = 48;
+
+    private final long maxBytes;
+    private final ToLongFunction<T> resultBytes;
+    private final LinkedHashMap<Key, Entry<T>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    // Newest generation seen; every entry belongs to it
+    private long generation = Long.MIN_VALUE;
+    private long hits;
+    private long misses;
+    private long stale;
+    private long evictions;
+
+    public QueryResultCache(long maxBytes, ToLongFunction<T> resultBytes) {
+        if(maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.resultBytes = resultBytes;
+    }
+
+    // Returns null on a miss
+    public synchronized List<T> get(Key key, long generation) {
+        advance(generation);
+        Entry<T> entry = entries.get(key);
+        if(entry != null && entry.generation == generation) {
+            hits++;
+            return entry.results;
+        }
+        misses++;
+        return null;
+    }
+
+    // 'generation' must be read before the results were computed, so a segment change that
+    // races the search leaves an entry that is never served
+    public void put(Key key, long generation, List<T> results) {
+        List<T> copy = List.copyOf(results);
+        long weight = ENTRY_BYTES + keyBytes(key);
+        for(T result : copy) {
+            weight += resultBytes.applyAsLong(result);
+        }
+        if(weight > maxBytes) return;
+
+        synchronized (this) {
+            advance(generation);
+            if(generation < this.generation) return;
+            Entry<T> previous = entries.put(key, new Entry<>(generation, copy, weight));
+            if(previous != null) {
+                bytes -= previous.weight;
+            }
+            bytes += weight;
+
+            Iterator<Entry<T>> eldest = entries.values().iterator();
+            while(bytes > maxBytes) {
+                bytes -= eldest.next().weight;
+                eldest.remove();
+                evictions++;
+            }
+        }
+    }
+
+    private void advance(long generation) {
+        if(generation <= this.generation) return;
+        this.generation = generation;
+        stale += entries.size();
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, stale, evictions, entries.size(), bytes, maxBytes);
+    }
+
+    private static long keyBytes(Key key) {
+        long weight = key.text() == null ? 0 : 2L * key.text().length();
+        for(String term : key.query().terms()) {
+            weight += TERM_BYTES + 2L * term.length();
+        }
+        return weight + TERM_BYTES * key.query().constraints().size();
+    }
+}
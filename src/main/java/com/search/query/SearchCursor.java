@@ -0,0 +1,24 @@
+package com.search.query;
+
+// Where a page of results ended: the last hit's score and canonical document id, and the ranking
+// that score comes from. The next page holds the hits ranking strictly after it, so paging deep
+// never collects or sorts the hits of the pages before.
+public record SearchCursor(double score, long canonicalId, Ranking ranking) {
+
+    // Scores of different rankings are not comparable: BM25 / TF-IDF scores are unbounded, RRF
+    // scores are sums of 1 / (60 + rank)
+    public enum Ranking {
+        KEYWORD,
+        FUSED
+    }
+
+    public static SearchCursor after(SegmentSearcher.Hit hit) {
+        return new SearchCursor(hit.score(), hit.segment().canonicalId(hit.docId()), Ranking.KEYWORD);
+    }
+
+    // After the last result of a non-empty page; a keyword-only fallback page carries keyword scores
+    public static SearchCursor after(HybridQueryEngine.HybridPage page) {
+        HybridQueryEngine.HybridResult last = page.results().get(page.results().size() - 1);
+        return new SearchCursor(last.score(), last.canonicalDocId(), page.isFused() ? Ranking.FUSED : Ranking.KEYWORD);
+    }
+}
@@ -0,0 +1,276 @@
+package com.search.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+import com.search.index.DocIdIterator;
+import com.search.index.FilterCache;
+import com.search.index.PositionConstraint;
+import com.search.index.QueryContext;
+import com.search.index.RoaringDocIdSet;
+import com.search.index.TermDictionary;
+import com.search.ranking.Ranker;
+import com.search.ranking.ScoredDoc;
+import com.search.segment.Segment;
+import com.search.segment.SegmentManager;
+
+// Runs a keyword query against every segment and merges the per-segment top-k lists k-way.
+// Segments are spread over at most 'parallelism' tasks on a dedicated pool; with parallelism 1
+// everything runs on the calling thread.
+public class SegmentSearcher implements AutoCloseable {
+
+    public record Hit(Segment segment, int docId, double score) {}
+
+    // Terms no segment contains are searched as fuzzy terms instead of matching nothing
+    private static final boolean FUZZY_FALLBACK = Boolean.parseBoolean(System.getProperty("search.query.fuzzy.fallback", "true"));
+
+    private final SegmentManager segmentManager;
+    private final Ranker ranker;
+    private final int parallelism;
+    private final ForkJoinPool pool;
+    private final QueryResultCache<Hit> cache;
+    private final FilterCache filterCache;
+
+    // Keyword queries are answered from 'cache', and conjunctions pre-intersect the dense terms
+    // held in 'filterCache', whenever those are not null
+    public SegmentSearcher(SegmentManager segmentManager, Ranker ranker, int parallelism,
+                           QueryResultCache<Hit> cache, FilterCache filterCache) {
+        if(parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+        }
+        this.segmentManager = segmentManager;
+        this.ranker = ranker;
+        this.parallelism = parallelism;
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        this.cache = cache;
+        this.filterCache = filterCache;
+    }
+
+    public static int defaultParallelism() {
+        return Integer.getInteger("search.query.parallelism", Runtime.getRuntime().availableProcessors());
+    }
+
+    // Changes whenever the searched segment set does
+    public long generation() {
+        return segmentManager.getGeneration();
+    }
+
+    // Hits ranked [offset, offset + limit) over all segments by descending score; ties keep
+    // segment order, then doc order
+    public List<Hit> topK(KeywordQuery query, int offset, int limit) {
+        return topK(query, offset, limit, QueryContext.unbounded());
+    }
+
+    // Plain conjunctions and disjunctions run on block-max top-k, with positional constraints checked
+    // per segment before a hit is collected; other boolean queries stream their compiled iterator
+    // tree into the ranker.
+    // Once 'context' says stop, segments not yet searched are skipped and running ones return what
+    // they have; such partial pages are never cached.
+    public List<Hit> topK(KeywordQuery query, int offset, int limit, QueryContext context) {
+        if(cache == null) {
+            return search(query, null, offset, limit, context);
+        }
+
+        QueryResultCache.Key key = new QueryResultCache.Key("keyword", query, null, offset, limit);
+        long generation = generation();
+        List<Hit> hits = cache.get(key, generation);
+        if(hits == null) {
+            hits = search(query, null, offset, limit, context);
+            if(!context.isPartial()) {
+                cache.put(key, generation, hits);
+            }
+        }
+        return hits;
+    }
+
+    // The 'limit' hits ranking strictly after 'after' (null for the first page), in topK order.
+    // Segments only collect hits past the cursor, so a page deep into the results takes the
+    // memory and merge work of one page. Cursor pages are not cached.
+    public List<Hit> searchAfter(KeywordQuery query, SearchCursor after, int limit, QueryContext context) {
+        if(after.ranking() != SearchCursor.Ranking.KEYWORD) {
+            throw new IllegalArgumentException("Keyword search cannot continue a " + after.ranking() + " cursor");
+        }
+        return search(query, after, 0, limit, context);
+    }
+
+    private List<Hit> search(KeywordQuery parsed, SearchCursor cursor, int offset, int limit, QueryContext context) {
+        int k = offset + limit;
+        TermDictionary dictionary = segmentManager.getTermDictionary();
+        KeywordQuery query = FUZZY_FALLBACK ? fuzzyFallback(parsed, dictionary) : parsed;
+        int[] globalTermIds = dictionary.resolve(query.terms());
+        if(query.isConjunctive() || query.isDisjunctive()) {
+            boolean conjunctive = query.isConjunctive();
+            return topK((segment, after) -> search(segment, globalTermIds, query.constraints(), k, conjunctive, after, context),
+                cursor, offset, k, context);
+        }
+        return topK((segment, after) -> {
+            int totalDocs = segment.getDocuments().size();
+            IntStream.Builder scoringTermIds = IntStream.builder();
+            DoubleStream.Builder weights = DoubleStream.builder();
+            for(int termId : segment.termIds(globalTermIds)) {
+                scoringTermIds.add(termId);
+                weights.add(1.0);
+            }
+            // Wildcard and fuzzy expansions are per segment and score next to the query's own terms
+            DocIdIterator matches = new QueryExecutor(segment.getIndex(), segment.getSegmentId(), totalDocs, filterCache, context)
+                .execute(query.root(), term -> segment.termId(dictionary.id(term)), (termId, weight) -> {
+                    scoringTermIds.add(termId);
+                    weights.add(weight);
+                });
+            return ranker.topK(matches, scoringTermIds.build().toArray(), weights.build().toArray(),
+                segment.getIndex(), totalDocs, k, after, context);
+        }, cursor, offset, k, context);
+    }
+
+    private static KeywordQuery fuzzyFallback(KeywordQuery query, TermDictionary dictionary) {
+        QueryNode root = fuzzyFallback(query.root(), dictionary);
+        return root.equals(query.root()) ? query : KeywordQuery.of(root);
+    }
+
+    // Rewrites unknown terms to fuzzy terms with their default edits. Excluded terms, phrases and
+    // NEARs are left alone: a typo there should not widen what they match.
+    private static QueryNode fuzzyFallback(QueryNode node, TermDictionary dictionary) {
+        return switch(node) {
+            case QueryNode.Term term when dictionary.id(term.term()) < 0 -> {
+                int edits = QueryNode.Fuzzy.defaultEdits(term.term());
+                yield edits == 0 || term.term().length() > LevenshteinAutomaton.MAX_LENGTH
+                    ? term
+                    : new QueryNode.Fuzzy(term.term(), edits);
+            }
+            case QueryNode.And and -> new QueryNode.And(and.clauses().stream().map(clause -> fuzzyFallback(clause, dictionary)).toList());
+            case QueryNode.Or or -> new QueryNode.Or(or.clauses().stream().map(clause -> fuzzyFallback(clause, dictionary)).toList());
+            default -> node;
+        };
+    }
+
+    // 'searchSegment' gets each segment with the cursor in that segment's terms (null without one)
+    private List<Hit> topK(BiFunction<Segment, ScoredDoc, List<ScoredDoc>> searchSegment, SearchCursor cursor,
+                           int offset, int k, QueryContext context) {
+        List<Segment> segments = segmentManager.getSegments();
+        List<List<ScoredDoc>> perSegment = new ArrayList<>(segments.size());
+        ScoredDoc[] after = cursor == null ? new ScoredDoc[segments.size()] : after(segments, cursor);
+
+        int tasks = pool == null ? 1 : Math.min(parallelism, segments.size());
+        if(tasks <= 1) {
+            for(int i = 0; i < segments.size(); i++) {
+                perSegment.add(context.shouldStop() ? List.of() : searchSegment.apply(segments.get(i), after[i]));
+            }
+        } else {
+            // Strided slices so segments of similar age (and size) spread over all tasks
+            List<Callable<List<List<ScoredDoc>>>> slices = new ArrayList<>(tasks);
+            for(int t = 0; t < tasks; t++) {
+                int first = t;
+                slices.add(() -> {
+                    List<List<ScoredDoc>> results = new ArrayList<>();
+                    for(int i = first; i < segments.size(); i += tasks) {
+                        results.add(context.shouldStop() ? List.of() : searchSegment.apply(segments.get(i), after[i]));
+                    }
+                    return results;
+                });
+            }
+
+            List<List<List<ScoredDoc>>> sliceResults = new ArrayList<>(tasks);
+            for(Future<List<List<ScoredDoc>>> future : pool.invokeAll(slices)) {
+                sliceResults.add(join(future));
+            }
+            for(int i = 0; i < segments.size(); i++) {
+                perSegment.add(sliceResults.get(i % tasks).get(i / tasks));
+            }
+        }
+
+        return merge(segments, perSegment, offset, k);
+    }
+
+    // Hits tie on score in segment order, then doc order, so within each segment the cursor
+    // becomes (score, doc id): segments before the cursor's hit only contribute lower scores,
+    // segments after it ties as well. A cursor whose document is gone admits all ties, repeating
+    // some hits rather than skipping any.
+    private static ScoredDoc[] after(List<Segment> segments, SearchCursor cursor) {
+        int cursorSegment = -1;
+        int cursorDoc = -1;
+        for(int i = 0; i < segments.size() && cursorSegment < 0; i++) {
+            cursorDoc = segments.get(i).docId(Math.toIntExact(cursor.canonicalId()));
+            if(cursorDoc >= 0) cursorSegment = i;
+        }
+
+        ScoredDoc[] after = new ScoredDoc[segments.size()];
+        for(int i = 0; i < after.length; i++) {
+            int docId = i < cursorSegment ? Integer.MAX_VALUE : i == cursorSegment ? cursorDoc : -1;
+            after[i] = new ScoredDoc(docId, cursor.score());
+        }
+        return after;
+    }
+
+    private List<ScoredDoc> search(Segment segment, int[] globalTermIds, List<PositionConstraint> constraints, int k,
+                                   boolean conjunctive, ScoredDoc after, QueryContext context) {
+        int[] termIds = segment.termIds(globalTermIds);
+        int totalDocs = segment.getDocuments().size();
+        if(!conjunctive) {
+            return ranker.topK(termIds, segment.getIndex(), totalDocs, k, after, context);
+        }
+
+        DocIdIterator filter = null;
+        if(filterCache != null) {
+            RoaringDocIdSet docs = filterCache.filter(segment.getSegmentId(), segment.getIndex(), termIds, totalDocs);
+            if(docs != null) {
+                if(docs.cardinality() == 0) return List.of();
+                filter = docs.iterator();
+            }
+        }
+        return ranker.topK(termIds, constraints, filter, segment.getIndex(), totalDocs, k, after, context);
+    }
+
+    private static <T> T join(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException runtime) throw runtime;
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while searching segments", e);
+        }
+    }
+
+    // Each list is already sorted best first, so only the current head of every list competes
+    private static List<Hit> merge(List<Segment> segments, List<List<ScoredDoc>> perSegment, int offset, int k) {
+        record Head(int segment, int index, double score) {}
+
+        PriorityQueue<Head> heads = new PriorityQueue<>((a, b) -> {
+            int cmp = Double.compare(b.score, a.score);
+            return cmp != 0 ? cmp : Integer.compare(a.segment, b.segment);
+        });
+        for(int s = 0; s < perSegment.size(); s++) {
+            if(!perSegment.get(s).isEmpty()) {
+                heads.add(new Head(s, 0, perSegment.get(s).get(0).score()));
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>(Math.min(k - offset, 64));
+        for(int rank = 0; rank < k && !heads.isEmpty(); rank++) {
+            Head head = heads.poll();
+            List<ScoredDoc> list = perSegment.get(head.segment);
+            if(rank >= offset) {
+                ScoredDoc scored = list.get(head.index);
+                hits.add(new Hit(segments.get(head.segment), scored.docId(), scored.score()));
+            }
+            if(head.index + 1 < list.size()) {
+                heads.add(new Head(head.segment, head.index + 1, list.get(head.index + 1).score()));
+            }
+        }
+        return hits;
+    }
+
+    @Override
+    public void close() {
+        if(pool != null) pool.shutdown();
+    }
+}
@@ -2,12 +2,12 @@ package com.search.query;
 
 import com.search.embedding.EmbeddingService;
 import com.search.embedding.EmbeddingStore;
-import com.search.ranking.CosineSimilarity;
+import com.search.index.QueryContext;
+import com.search.ranking.ScoredDoc;
 
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 
 public class SemanticQueryEngine {
 
@@ -19,17 +19,28 @@ public class SemanticQueryEngine {
         this.embeddingStore = embeddingStore;
     }
 
-    public List<ScoredDocument> search(String query) {
-        float[] queryEmbedding = embeddingService.embed(query);
-        Map<Long, float[]> allEmbeddings = embeddingStore.getAllEmbeddings();
+    // The k most similar documents, best first; equal scores go to the lower canonical id
+    public List<ScoredDocument> search(String query, int k) {
+        return search(query, k, QueryContext.unbounded());
+    }
 
-        List<ScoredDocument> results = new ArrayList<>();
-        for (var entry : allEmbeddings.entrySet()) {
-            double score = CosineSimilarity.compute(queryEmbedding, entry.getValue());
-            results.add(new ScoredDocument(entry.getKey(), score));
+    // As above; the embedding request gets at most the time left before the context's deadline,
+    // and the scan over the resident embeddings returns the best k seen so far once the context
+    // says stop
+    public List<ScoredDocument> search(String query, int k, QueryContext context) {
+        // Read before polling, so a zero timeout is never passed on
+        Duration remaining = context.remaining();
+        if (context.shouldStop()) {
+            return List.of();
         }
+        float[] queryEmbedding = remaining == null
+            ? embeddingService.embed(query)
+            : embeddingService.embed(query, remaining);
 
-        results.sort(Comparator.comparingDouble(ScoredDocument::score).reversed());
+        List<ScoredDocument> results = new ArrayList<>(k);
+        for (ScoredDoc doc : embeddingStore.matrix().topK(queryEmbedding, k, context)) {
+            results.add(new ScoredDocument(doc.docId(), doc.score()));
+        }
         return results;
     }
 
@@ -1,9 +1,10 @@
 package com.search.rag;
 
-import com.search.model.Document;
+import com.search.model.DocumentInfo;
 import com.search.query.HybridQueryEngine;
-import com.search.storage.DocumentRepository;
+import com.search.storage.DocumentStore;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -11,25 +12,34 @@ public class ContextAssembler {
 
     private static final int MAX_WORDS_PER_DOC = 3000;
 
-    private final DocumentRepository documentRepository;
+    private final DocumentStore documentStore;
 
-    public ContextAssembler(DocumentRepository documentRepository) {
-        this.documentRepository = documentRepository;
+    public ContextAssembler(DocumentStore documentStore) {
+        this.documentStore = documentStore;
     }
 
     public String assemble(List<HybridQueryEngine.HybridResult> results, int topK) {
-        Map<Integer, Document> canonicalDocs = documentRepository.loadCanonicalDocuments();
+        // Metadata is resident; the bodies of the chosen documents come in one batched read
+        List<DocumentInfo> docs = new ArrayList<>(topK);
+        for (HybridQueryEngine.HybridResult r : results) {
+            if (docs.size() >= topK) break;
+            DocumentInfo doc = documentStore.info((int) r.canonicalDocId());
+            if (doc != null) docs.add(doc);
+        }
+        Map<Integer, String> contents = documentStore.contents(
+            docs.stream().mapToInt(DocumentInfo::canonicalId).toArray()
+        );
+
         StringBuilder context = new StringBuilder();
 
         int count = 0;
-        for (HybridQueryEngine.HybridResult r : results) {
-            if (count >= topK) break;
-            Document doc = canonicalDocs.get((int) r.canonicalDocId());
-            if (doc == null) continue;
+        for (DocumentInfo doc : docs) {
+            String content = contents.get(doc.canonicalId());
+            if (content == null) continue;
 
             count++;
-            String truncatedContent = truncateToWords(doc.getContent(), MAX_WORDS_PER_DOC);
-            context.append("[Doc ").append(count).append(": ").append(doc.getTitle()).append("] ");
+            String truncatedContent = truncateToWords(content, MAX_WORDS_PER_DOC);
+            context.append("[Doc ").append(count).append(": ").append(doc.title()).append("] ");
             context.append(truncatedContent);
             context.append("\n\n");
         }
@@ -1,11 +1,10 @@
 package com.search.rag;
 
-import com.search.model.Document;
+import com.search.model.DocumentInfo;
 import com.search.query.HybridQueryEngine;
-import com.search.storage.DocumentRepository;
+import com.search.storage.DocumentStore;
 
 import java.util.List;
-import java.util.Map;
 
 public class RagPipeline {
 
@@ -18,20 +17,20 @@ public class RagPipeline {
     private final HybridQueryEngine hybridQueryEngine;
     private final ContextAssembler contextAssembler;
     private final LlmClient llmClient;
-    private final DocumentRepository documentRepository;
+    private final DocumentStore documentStore;
 
     public RagPipeline(HybridQueryEngine hybridQueryEngine,
-                       DocumentRepository documentRepository,
+                       DocumentStore documentStore,
                        String apiKey) {
         this.hybridQueryEngine = hybridQueryEngine;
-        this.documentRepository = documentRepository;
-        this.contextAssembler = new ContextAssembler(documentRepository);
+        this.documentStore = documentStore;
+        this.contextAssembler = new ContextAssembler(documentStore);
         this.llmClient = new LlmClient(apiKey);
     }
 
     public void ask(String question) {
         // 1. Hybrid search
-        List<HybridQueryEngine.HybridResult> results = hybridQueryEngine.search(question);
+        List<HybridQueryEngine.HybridResult> results = hybridQueryEngine.search(question, 0, TOP_K);
 
         if (results.isEmpty()) {
             System.out.println("No relevant documents found for your question.");
@@ -57,14 +56,13 @@ public class RagPipeline {
 
         // Show sources
         System.out.println("Sources:");
-        Map<Integer, Document> canonicalDocs = documentRepository.loadCanonicalDocuments();
         int shown = 0;
         for (HybridQueryEngine.HybridResult r : results) {
             if (shown >= TOP_K) break;
-            Document doc = canonicalDocs.get((int) r.canonicalDocId());
+            DocumentInfo doc = documentStore.info((int) r.canonicalDocId());
             if (doc == null) continue;
             shown++;
-            System.out.printf("  [Doc %d] %s (score: %.4f)%n", shown, doc.getTitle(), r.score());
+            System.out.printf("  [Doc %d] %s (score: %.4f)%n", shown, doc.title(), r.score());
         }
         System.out.println();
     }
@@ -0,0 +1,237 @@
+package com.search.ranking;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.search.index.DocIdIterator;
+import com.search.index.IndexReader;
+import com.search.index.PositionConstraint;
+import com.search.index.PostingsIterator;
+import com.search.index.QueryContext;
+
+// Top-k retrieval that skips docs which cannot beat the current k-th score.
+// Each term contributes an upper bound: its max score overall (WAND pivot selection) and its
+// max score within the current postings block (block-max check via advanceShallow).
+// Position constraints are checked last, only for conjunctive matches that are competitive.
+// A conjunctive filter (e.g. cached doc id sets intersected up front) joins the leapfrog as one
+// more iterator and leads it whenever it is the cheapest. Both loops poll the query context and
+// return the top k collected so far once it says stop.
+final class BlockMaxWand {
+
+    // Bounds and real scores are summed in different orders; leave room for rounding
+    private static final double BOUND_SLACK = 1e-9;
+
+    private final Cursor[] cursors;
+    private final PostingsIterator[] postings;
+    private final PositionConstraint[] constraints;
+    private final DocIdIterator filter;
+    private final QueryContext context;
+
+    // 'filter' may be null
+    BlockMaxWand(Ranker ranker, int[] termIds, List<PositionConstraint> constraints, DocIdIterator filter,
+                 IndexReader index, int totalDocs, QueryContext context) {
+        this.cursors = new Cursor[termIds.length];
+        this.postings = new PostingsIterator[termIds.length];
+        for(int i = 0; i < cursors.length; i++) {
+            int termId = termIds[i];
+            postings[i] = Ranker.postings(index, termId);
+            cursors[i] = new Cursor(postings[i], ranker.termScorer(index, termId, totalDocs));
+        }
+        this.constraints = constraints.toArray(new PositionConstraint[0]);
+        this.filter = filter;
+        this.context = context;
+    }
+
+    // Only docs ranking strictly after 'after' (null for none) are collected
+    List<ScoredDoc> disjunctive(int k, ScoredDoc after) {
+        if(constraints.length > 0 || filter != null) {
+            throw new IllegalStateException("Position constraints and filters require a conjunctive query");
+        }
+        if(k <= 0 || cursors.length == 0) return List.of();
+        TopKCollector top = new TopKCollector(k, after);
+
+        Cursor[] byDoc = cursors.clone();
+        for(Cursor cursor : byDoc) {
+            cursor.postings.nextDoc();
+        }
+
+        int work = 0;
+        while(true) {
+            if((work += byDoc.length) >= QueryContext.CHECK_INTERVAL) {
+                if(context.shouldStop()) break;
+                work = 0;
+            }
+            sortByDoc(byDoc);
+            double threshold = top.threshold();
+
+            // Pivot: first cursor at which the summed max scores could beat the threshold
+            int pivot = -1;
+            double bound = 0;
+            for(int i = 0; i < byDoc.length && byDoc[i].doc() != PostingsIterator.NO_MORE_DOCS; i++) {
+                bound += byDoc[i].maxScore;
+                if(competitive(bound, threshold)) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if(pivot < 0) break;
+
+            int pivotDoc = byDoc[pivot].doc();
+            while(pivot + 1 < byDoc.length && byDoc[pivot + 1].doc() == pivotDoc) {
+                pivot++;
+            }
+
+            double blockBound = 0;
+            int nextTarget = PostingsIterator.NO_MORE_DOCS;
+            for(int i = 0; i <= pivot; i++) {
+                int blockEnd = byDoc[i].postings.advanceShallow(pivotDoc);
+                blockBound += byDoc[i].blockMaxScore();
+                nextTarget = Math.min(nextTarget, next(blockEnd));
+            }
+
+            if(competitive(blockBound, threshold)) {
+                if(byDoc[0].doc() == pivotDoc) {
+                    collect(top, pivotDoc);
+                    for(int i = 0; i <= pivot; i++) {
+                        byDoc[i].postings.nextDoc();
+                    }
+                } else {
+                    for(int i = 0; byDoc[i].doc() < pivotDoc; i++) {
+                        byDoc[i].postings.advance(pivotDoc);
+                    }
+                }
+            } else {
+                // Nothing before nextTarget can compete: the leading terms are capped by their
+                // current blocks and every other term starts at or after nextTarget
+                if(pivot + 1 < byDoc.length) {
+                    nextTarget = Math.min(nextTarget, byDoc[pivot + 1].doc());
+                }
+                for(int i = 0; i <= pivot; i++) {
+                    byDoc[i].postings.advance(nextTarget);
+                }
+            }
+        }
+
+        return top.toList(0);
+    }
+
+    // Only docs ranking strictly after 'after' (null for none) are collected
+    List<ScoredDoc> conjunctive(int k, ScoredDoc after) {
+        if(k <= 0 || cursors.length == 0) return List.of();
+        TopKCollector top = new TopKCollector(k, after);
+
+        DocIdIterator[] byCost = Arrays.copyOf(postings, postings.length + (filter == null ? 0 : 1), DocIdIterator[].class);
+        if(filter != null) {
+            byCost[postings.length] = filter;
+        }
+        Arrays.sort(byCost, Comparator.comparingInt(DocIdIterator::cost));
+        if(byCost[0].cost() == 0) return List.of();
+
+        double maxBound = 0;
+        for(Cursor cursor : cursors) {
+            maxBound += cursor.maxScore;
+        }
+
+        DocIdIterator lead = byCost[0];
+        int doc = lead.nextDoc();
+        int work = 0;
+
+        nextCandidate:
+        while(doc != PostingsIterator.NO_MORE_DOCS) {
+            if((work += byCost.length) >= QueryContext.CHECK_INTERVAL) {
+                if(context.shouldStop()) break;
+                work = 0;
+            }
+            if(top.isFull()) {
+                double threshold = top.threshold();
+                if(!competitive(maxBound, threshold)) break;
+
+                double blockBound = 0;
+                int nextTarget = PostingsIterator.NO_MORE_DOCS;
+                for(Cursor cursor : cursors) {
+                    int blockEnd = cursor.postings.advanceShallow(doc);
+                    blockBound += cursor.blockMaxScore();
+                    nextTarget = Math.min(nextTarget, next(blockEnd));
+                }
+                if(!competitive(blockBound, threshold)) {
+                    doc = lead.advance(nextTarget);
+                    continue;
+                }
+            }
+
+            for(int i = 1; i < byCost.length; i++) {
+                DocIdIterator other = byCost[i];
+                int otherDoc = other.docId() < doc ? other.advance(doc) : other.docId();
+                if(otherDoc > doc) {
+                    doc = lead.advance(otherDoc);
+                    continue nextCandidate;
+                }
+            }
+
+            if(matchesPositions()) {
+                collect(top, doc);
+            }
+            doc = lead.nextDoc();
+        }
+
+        return top.toList(0);
+    }
+
+    private boolean matchesPositions() {
+        for(PositionConstraint constraint : constraints) {
+            if(!constraint.matches(postings)) return false;
+        }
+        return true;
+    }
+
+    // Sums in query order, exactly as exhaustive ranking does, so both produce identical scores
+    private void collect(TopKCollector top, int docId) {
+        double score = 0;
+        for(Cursor cursor : cursors) {
+            if(cursor.doc() == docId) {
+                score += cursor.scorer.score(docId, cursor.postings.termFrequency());
+            }
+        }
+
+        top.collect(docId, score);
+    }
+
+    // Docs are visited in ascending order, so a later doc tying the k-th score never displaces it
+    private static boolean competitive(double bound, double threshold) {
+        return bound + Math.abs(bound) * BOUND_SLACK > threshold;
+    }
+
+    private static int next(int blockEnd) {
+        return blockEnd >= PostingsIterator.NO_MORE_DOCS - 1 ? PostingsIterator.NO_MORE_DOCS : blockEnd + 1;
+    }
+
+    private static void sortByDoc(Cursor[] cursors) {
+        for(int i = 1; i < cursors.length; i++) {
+            Cursor cursor = cursors[i];
+            int j = i - 1;
+            for(; j >= 0 && cursors[j].doc() > cursor.doc(); j--) {
+                cursors[j + 1] = cursors[j];
+            }
+            cursors[j + 1] = cursor;
+        }
+    }
+
+    private static final class Cursor {
+        final PostingsIterator postings;
+        final TermScorer scorer;
+        final double maxScore;
+
+        Cursor(PostingsIterator postings, TermScorer scorer) {
+            this.postings = postings;
+            this.scorer = scorer;
+            this.maxScore = scorer.maxScore(postings.maxTermFrequency());
+        }
+
+        int doc() { return postings.docId(); }
+
+        double blockMaxScore() {
+            return scorer.maxScore(postings.blockMaxTermFrequency());
+        }
+    }
+}
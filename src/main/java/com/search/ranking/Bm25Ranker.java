@@ -0,0 +1,78 @@
+package com.search.ranking;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.search.index.IndexReader;
+import com.search.index.Norms;
+
+public class Bm25Ranker implements Ranker {
+
+    public static final double DEFAULT_K1 = 1.2;
+    public static final double DEFAULT_B = 0.75;
+
+    // Term frequencies below this are scored from a per-segment table instead of dividing
+    private static final int TABLE_TF = 32;
+
+    private final double k1;
+    private final double b;
+    private final Map<Norms, LengthTables> tables = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public Bm25Ranker() {
+        this(DEFAULT_K1, DEFAULT_B);
+    }
+
+    public Bm25Ranker(double k1, double b) {
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    @Override
+    public TermScorer termScorer(IndexReader index, int termId, int totalDocs) {
+        int df = Ranker.docFreq(index, termId);
+        double weight = Math.log(1.0 + (totalDocs - df + 0.5) / (df + 0.5)) * (k1 + 1);
+        Norms norms = index.norms();
+        LengthTables length = tables.computeIfAbsent(norms, LengthTables::new);
+        double[] saturation = length.saturation;
+        double[] factors = length.factors;
+
+        return new TermScorer() {
+            @Override
+            public double score(int docId, int termFrequency) {
+                int norm = norms.norm(docId) & 0xFF;
+                if(termFrequency < TABLE_TF) {
+                    return weight * saturation[(termFrequency << 8) | norm];
+                }
+                return weight * termFrequency / (termFrequency + factors[norm]);
+            }
+
+            @Override
+            public double maxScore(int maxTermFrequency) {
+                return weight * maxTermFrequency / (maxTermFrequency + length.minFactor);
+            }
+        };
+    }
+
+    // Term-independent parts of BM25 for one segment, indexed by norm byte:
+    // factors[norm] = k1 * (1 - b + b * length / avgdl), saturation[tf << 8 | norm] = tf / (tf + factor)
+    private final class LengthTables {
+        final double[] factors = new double[256];
+        final double[] saturation = new double[TABLE_TF << 8];
+        // The shortest doc has the smallest factor and therefore the highest score for any tf
+        final double minFactor;
+
+        LengthTables(Norms norms) {
+            double averageLength = norms.averageLength();
+            for(int norm = 0; norm < factors.length; norm++) {
+                factors[norm] = k1 * (1 - b + b * Norms.decode((byte) norm) / averageLength);
+            }
+            for(int tf = 0; tf < TABLE_TF; tf++) {
+                for(int norm = 0; norm < factors.length; norm++) {
+                    saturation[(tf << 8) | norm] = tf / (tf + factors[norm]);
+                }
+            }
+            minFactor = k1 * (1 - b + b * norms.minLength() / averageLength);
+        }
+    }
+}
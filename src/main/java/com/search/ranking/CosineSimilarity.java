@@ -1,26 +0,0 @@
-package com.search.ranking;
-
-public final class CosineSimilarity {
-
-    private CosineSimilarity() {}
-
-    public static double compute(float[] a, float[] b) {
-        if (a.length != b.length) {
-            throw new IllegalArgumentException("Vectors must have the same length");
-        }
-
-        double dot = 0.0;
-        double normA = 0.0;
-        double normB = 0.0;
-
-        for (int i = 0; i < a.length; i++) {
-            dot += a[i] * b[i];
-            normA += a[i] * a[i];
-            normB += b[i] * b[i];
-        }
-
-        double denom = Math.sqrt(normA) * Math.sqrt(normB);
-        if (denom == 0.0) return 0.0;
-        return dot / denom;
-    }
-}
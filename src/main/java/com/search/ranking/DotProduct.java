@@ -0,0 +1,66 @@
+package com.search.ranking;
+
+// Dot products over float rows, on the Vector API when the jdk.incubator.vector module is present
+// (run with --add-modules jdk.incubator.vector) and otherwise on a scalar loop. Cosine similarity
+// of vectors normalized once up front is then just their dot product.
+public final class DotProduct {
+
+    interface Kernel {
+        float compute(float[] a, int aOffset, float[] b, int bOffset, int length);
+    }
+
+    // Set search.vector.simd=false to force the scalar loop
+    private static final Kernel KERNEL = loadKernel();
+
+    private DotProduct() {}
+
+    public static float compute(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return KERNEL.compute(a, aOffset, b, bOffset, length);
+    }
+
+    public static boolean isVectorized() {
+        return !(KERNEL instanceof Scalar);
+    }
+
+    // A unit-length copy of 'vector'; the zero vector stays zero, so it scores 0 against anything
+    public static float[] normalize(float[] vector) {
+        double norm = Math.sqrt(compute(vector, 0, vector, 0, vector.length));
+        float[] normalized = new float[vector.length];
+        if(norm == 0) return normalized;
+        for(int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private static Kernel loadKernel() {
+        if(!Boolean.parseBoolean(System.getProperty("search.vector.simd", "true"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return new Scalar();
+        }
+        try {
+            return new SimdDotProduct();
+        } catch(LinkageError e) {
+            return new Scalar();
+        }
+    }
+
+    // Four independent sums, so the additions of consecutive elements do not wait on each other
+    static final class Scalar implements Kernel {
+        @Override
+        public float compute(float[] a, int aOffset, float[] b, int bOffset, int length) {
+            float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            int i = 0;
+            for(; i + 3 < length; i += 4) {
+                s0 += a[aOffset + i] * b[bOffset + i];
+                s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+                s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+                s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+            }
+            for(; i < length; i++) {
+                s0 += a[aOffset + i] * b[bOffset + i];
+            }
+            return (s0 + s1) + (s2 + s3);
+        }
+    }
+}
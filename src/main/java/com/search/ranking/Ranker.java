@@ -1,10 +1,77 @@
 package com.search.ranking;
 
 import java.util.List;
-import java.util.Map;
 
-import com.search.index.InvertedIndex;
+import com.search.index.DocIdIterator;
+import com.search.index.IndexReader;
+import com.search.index.PositionConstraint;
+import com.search.index.PostingsIterator;
+import com.search.index.QueryContext;
 
 public interface Ranker {
-    Map<Integer, Double> rank(List<String> terms, InvertedIndex index, int totalDocs);
+
+    // Term ids are the index's own; -1 stands for a term the index does not contain.
+    // Scores must not decrease as tf grows, so per-block max tf bounds a block's scores
+    TermScorer termScorer(IndexReader index, int termId, int totalDocs);
+
+    static PostingsIterator postings(IndexReader index, int termId) {
+        return termId < 0 ? PostingsIterator.empty() : index.postings(termId);
+    }
+
+    static int docFreq(IndexReader index, int termId) {
+        return termId < 0 ? 0 : index.docFreq(termId);
+    }
+
+    // Disjunctive top-k: best k docs containing any of the terms by descending score (ties by
+    // ascending doc id), the same docs and scores exhaustive ranking would produce. Collects only
+    // docs ranking strictly after 'after' (null for the first page) and returns the best k found
+    // so far once 'context' says stop.
+    default List<ScoredDoc> topK(int[] termIds, IndexReader index, int totalDocs, int k, ScoredDoc after,
+                                 QueryContext context) {
+        return new BlockMaxWand(this, termIds, List.of(), null, index, totalDocs, context).disjunctive(k, after);
+    }
+
+    // Conjunctive top-k over the docs that also satisfy every constraint and lie in 'filter' (null
+    // for none); constraints refer to terms by their index in termIds. The filter may only drop
+    // docs, never add any: it narrows the candidates but scores still come from the postings.
+    // Paging and the context work as above.
+    default List<ScoredDoc> topK(int[] termIds, List<PositionConstraint> constraints, DocIdIterator filter,
+                                 IndexReader index, int totalDocs, int k, ScoredDoc after, QueryContext context) {
+        return new BlockMaxWand(this, termIds, constraints, filter, index, totalDocs, context).conjunctive(k, after);
+    }
+
+    // Best k of the docs 'matches' streams (e.g. a compiled boolean query), each scored by
+    // whichever of the terms it contains, times that term's weight (e.g. a fuzzy term's distance
+    // penalty). Terms are summed in query order, as the block-max overloads do, so a plain
+    // conjunction or disjunction scores the same either way. Paging and the context work as above.
+    default List<ScoredDoc> topK(DocIdIterator matches, int[] termIds, double[] weights,
+                                 IndexReader index, int totalDocs, int k, ScoredDoc after, QueryContext context) {
+        if(k <= 0) return List.of();
+        TermScorer[] scorers = new TermScorer[termIds.length];
+        PostingsIterator[] postings = new PostingsIterator[termIds.length];
+        for(int i = 0; i < termIds.length; i++) {
+            scorers[i] = termScorer(index, termIds[i], totalDocs);
+            postings[i] = postings(index, termIds[i]);
+        }
+
+        TopKCollector top = new TopKCollector(k, after);
+        // A doc costs about one step per term, in the iterator tree and in scoring
+        int work = 0;
+        for(int docId = matches.nextDoc(); docId != DocIdIterator.NO_MORE_DOCS; docId = matches.nextDoc()) {
+            if((work += postings.length + 1) >= QueryContext.CHECK_INTERVAL) {
+                if(context.shouldStop()) break;
+                work = 0;
+            }
+            double score = 0;
+            for(int i = 0; i < postings.length; i++) {
+                PostingsIterator termPostings = postings[i];
+                int termDoc = termPostings.docId() < docId ? termPostings.advance(docId) : termPostings.docId();
+                if(termDoc == docId) {
+                    score += weights[i] * scorers[i].score(docId, termPostings.termFrequency());
+                }
+            }
+            top.collect(docId, score);
+        }
+        return top.toList(0);
+    }
 }
@@ -0,0 +1,3 @@
+package com.search.ranking;
+
+public record ScoredDoc(int docId, double score) {}
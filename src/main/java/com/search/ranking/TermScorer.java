@@ -0,0 +1,8 @@
+package com.search.ranking;
+
+public interface TermScorer {
+    double score(int docId, int termFrequency);
+
+    // Upper bound of score() for any doc whose tf is at most maxTermFrequency
+    double maxScore(int maxTermFrequency);
+}
@@ -1,32 +1,24 @@
 package com.search.ranking;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-import com.search.index.InvertedIndex;
-import com.search.index.Posting;
+import com.search.index.IndexReader;
 
 public class TfIdfRanker implements Ranker {
-    
-    @Override
-    public Map<Integer, Double> rank(List<String> terms, InvertedIndex index, int totalDocs) {
-        Map<Integer, Double> scores = new HashMap<>();
-
-        for(String term: terms) {
-            Map<Integer, Posting> postings = index.getPostings(term);
-            int df = postings.size();
 
-            for(Map.Entry<Integer, Posting> entry: postings.entrySet()) {
-                int docId = entry.getKey();
-                int tf = entry.getValue().getTermFrequency();
+    @Override
+    public TermScorer termScorer(IndexReader index, int termId, int totalDocs) {
+        int df = Ranker.docFreq(index, termId);
+        double idf = Math.log((totalDocs + 1.0) / (df + 1.0)) + 1.0;
 
-                double idf = Math.log((totalDocs + 1.0) / (df + 1.0)) + 1.0;
-                double score = tf * idf;
-                scores.merge(docId, score, Double::sum);
+        return new TermScorer() {
+            @Override
+            public double score(int docId, int termFrequency) {
+                return termFrequency * idf;
             }
-        }
 
-        return scores;
+            @Override
+            public double maxScore(int maxTermFrequency) {
+                return maxTermFrequency * idf;
+            }
+        };
     }
 }
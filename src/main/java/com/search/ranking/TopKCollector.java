@@ -0,0 +1,126 @@
+package com.search.ranking;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Fixed-capacity min-heap of (id, score) pairs keeping the k best: a higher score wins, equal
+// scores go to the lower id. Ids and scores live in parallel primitive arrays, so collecting
+// allocates nothing. Scores stay doubles so collected values match exhaustive scoring exactly.
+// With an 'after' pair it collects the next page: only pairs ranking strictly after it are kept,
+// so any page costs O(k) memory however deep it is.
+public final class TopKCollector {
+    private final int k;
+    private final int[] ids;
+    private final double[] scores;
+    private final boolean paging;
+    private final int afterId;
+    private final double afterScore;
+    private int size;
+    private boolean sorted;
+
+    public TopKCollector(int k) {
+        this(k, null);
+    }
+
+    // 'after' may be null for the first page
+    public TopKCollector(int k, ScoredDoc after) {
+        if(k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        this.k = k;
+        this.ids = new int[k];
+        this.scores = new double[k];
+        this.paging = after != null;
+        this.afterId = paging ? after.docId() : 0;
+        this.afterScore = paging ? after.score() : 0;
+    }
+
+    public int k() { return k; }
+    public int size() { return size; }
+    public boolean isFull() { return size == k; }
+
+    // Score a candidate must beat once the collector is full
+    public double threshold() {
+        return size < k ? Double.NEGATIVE_INFINITY : scores[0];
+    }
+
+    // Returns whether the pair was kept
+    public boolean collect(int id, double score) {
+        if(sorted) {
+            throw new IllegalStateException("Collector already sorted");
+        }
+        if(paging && (score > afterScore || (score == afterScore && id <= afterId))) return false;
+        if(size < k) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+            return true;
+        }
+        if(k == 0 || !better(id, score, 0)) return false;
+
+        ids[0] = id;
+        scores[0] = score;
+        siftDown(0, size);
+        return true;
+    }
+
+    private boolean better(int id, double score, int slot) {
+        return score > scores[slot] || (score == scores[slot] && id < ids[slot]);
+    }
+
+    private void siftUp(int slot) {
+        while(slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if(!better(ids[parent], scores[parent], slot)) break;
+            swap(slot, parent);
+            slot = parent;
+        }
+    }
+
+    private void siftDown(int slot, int end) {
+        while(true) {
+            int worst = slot;
+            int left = 2 * slot + 1;
+            int right = left + 1;
+            if(left < end && better(ids[worst], scores[worst], left)) worst = left;
+            if(right < end && better(ids[worst], scores[worst], right)) worst = right;
+            if(worst == slot) return;
+            swap(slot, worst);
+            slot = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        double score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+
+    // Heap-sorts in place: afterwards id(i) / score(i) run best first and nothing more can be
+    // collected. Returns the number of entries.
+    public int sort() {
+        if(sorted) return size;
+        sorted = true;
+        for(int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        return size;
+    }
+
+    public int id(int rank) { return ids[rank]; }
+    public double score(int rank) { return scores[rank]; }
+
+    // Best-first entries from rank 'offset' on, as ScoredDocs
+    public List<ScoredDoc> toList(int offset) {
+        int count = sort();
+        List<ScoredDoc> results = new ArrayList<>(Math.max(0, count - offset));
+        for(int rank = offset; rank < count; rank++) {
+            results.add(new ScoredDoc(ids[rank], scores[rank]));
+        }
+        return results;
+    }
+}
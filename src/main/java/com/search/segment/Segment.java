@@ -1,38 +1,177 @@
 package com.search.segment;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import com.search.index.FrozenIndex;
+import com.search.index.IndexReader;
 import com.search.index.InvertedIndex;
-import com.search.model.Document;
+import com.search.index.SegmentFile;
+import com.search.index.TermDictionary;
+import com.search.model.DocumentInfo;
 import com.search.model.Token;
 
 public class Segment {
     private final int segmentId;
-    private final Map<Integer, Document> documents = new HashMap<>();
-    private InvertedIndex index;
+    private final Map<Integer, DocumentInfo> documents = new HashMap<>();
+    private InvertedIndex builder;
+    private IndexReader index;
+
+    // Global term ids present in this segment, sorted, and the matching segment term ids
+    private int[] globalTermIds = new int[0];
+    private int[] localTermIds = new int[0];
+
+    // Doc id -> canonical id (-1 where no doc), and the inverse as (canonical id << 32 | doc id)
+    // sorted; both built when the segment is sealed
+    private int[] canonicalIds = new int[0];
+    private long[] docIdsByCanonicalId = new long[0];
 
     public Segment(int segmentId) {
         this.segmentId = segmentId;
-        this.index = new InvertedIndex();
+        this.builder = new InvertedIndex();
+    }
+
+    // Already sealed, e.g. backed by a mapped segment file or a LazyIndex
+    public Segment(int segmentId, IndexReader index, Map<Integer, DocumentInfo> documents) {
+        this.segmentId = segmentId;
+        this.index = index;
+        this.documents.putAll(documents);
+        buildDocMap();
     }
 
     // Used during seeding/indexing
-    public void addDocument(int docId, Document document, List<Token> tokens) {
+    public void addDocument(int docId, DocumentInfo document, List<Token> tokens) {
+        ensureWritable();
         documents.put(docId, document);
-        index.addDocument(docId, tokens);
+        builder.addDocument(docId, tokens);
     }
 
     // Used ONLY during cold start
-    public void addDocument(int docId, Document document) {
+    public void addDocument(int docId, DocumentInfo document) {
+        ensureWritable();
         documents.put(docId, document);
     }
 
-    public void setIndex(InvertedIndex index) { this.index = index; }
+    public void setIndex(InvertedIndex index) {
+        ensureWritable();
+        this.builder = index;
+    }
+
+    // Freezes the index into its read-optimized form; no documents can be added afterwards
+    public void seal() {
+        if(isSealed()) return;
+        index = FrozenIndex.freeze(builder);
+        builder = null;
+        buildDocMap();
+    }
+
+    private void buildDocMap() {
+        int maxDocId = documents.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1);
+        int[] canonical = new int[maxDocId + 1];
+        Arrays.fill(canonical, -1);
+        long[] inverse = new long[documents.size()];
+        int count = 0;
+        for(Map.Entry<Integer, DocumentInfo> entry : documents.entrySet()) {
+            int docId = entry.getKey();
+            int canonicalId = entry.getValue().canonicalId();
+            canonical[docId] = canonicalId;
+            inverse[count++] = ((long) canonicalId << 32) | docId;
+        }
+        Arrays.sort(inverse);
+        this.canonicalIds = canonical;
+        this.docIdsByCanonicalId = inverse;
+    }
+
+    public boolean isSealed() { return index != null; }
+
+    // Maps this segment's terms onto the global dictionary; terms it does not know stay unmapped
+    public void bindTerms(TermDictionary dictionary) {
+        IndexReader reader = getIndex();
+        long[] pairs = new long[reader.termCount()];
+        int count = 0;
+        for(int termId = 0; termId < reader.termCount(); termId++) {
+            int globalId = dictionary.id(reader.term(termId));
+            if(globalId >= 0) {
+                pairs[count++] = ((long) globalId << 32) | termId;
+            }
+        }
+        Arrays.sort(pairs, 0, count);
+
+        int[] global = new int[count];
+        int[] local = new int[count];
+        for(int i = 0; i < count; i++) {
+            global[i] = (int) (pairs[i] >>> 32);
+            local[i] = (int) pairs[i];
+        }
+        this.globalTermIds = global;
+        this.localTermIds = local;
+    }
+
+    // Returns -1 when the term does not occur in this segment
+    public int termId(int globalTermId) {
+        int i = globalTermId < 0 ? -1 : Arrays.binarySearch(globalTermIds, globalTermId);
+        return i < 0 ? -1 : localTermIds[i];
+    }
+
+    public int[] termIds(int[] globalTermIds) {
+        int[] termIds = new int[globalTermIds.length];
+        for(int i = 0; i < termIds.length; i++) {
+            termIds[i] = termId(globalTermIds[i]);
+        }
+        return termIds;
+    }
+
+    // Both lookups need a sealed segment; they return -1 for docs the segment does not hold
+
+    public int canonicalId(int docId) {
+        ensureSealed();
+        return docId >= 0 && docId < canonicalIds.length ? canonicalIds[docId] : -1;
+    }
+
+    public int docId(int canonicalId) {
+        ensureSealed();
+        int i = Arrays.binarySearch(docIdsByCanonicalId, (long) canonicalId << 32);
+        if(i < 0) i = -i - 1;
+        return i < docIdsByCanonicalId.length && (int) (docIdsByCanonicalId[i] >>> 32) == canonicalId
+            ? (int) docIdsByCanonicalId[i]
+            : -1;
+    }
+
+    // Highest doc id plus one; doc ids below it without a document map to -1
+    public int docIdLimit() {
+        ensureSealed();
+        return canonicalIds.length;
+    }
+
+    public void writeTo(Path path, Map<Integer, Integer> docToCanonical) throws IOException {
+        if(!(index instanceof FrozenIndex frozen)) {
+            throw new IllegalStateException("Segment " + segmentId + " is not backed by a frozen index");
+        }
+        SegmentFile.write(path, segmentId, frozen, docToCanonical);
+    }
 
     public int getSegmentId() { return segmentId; }
-    public Map<Integer, Document> getDocuments() { return Collections.unmodifiableMap(documents); }
-    public InvertedIndex getIndex() { return index; }
+    public Map<Integer, DocumentInfo> getDocuments() { return Collections.unmodifiableMap(documents); }
+
+    public IndexReader getIndex() {
+        ensureSealed();
+        return index;
+    }
+
+    private void ensureSealed() {
+        if(!isSealed()) {
+            throw new IllegalStateException("Segment " + segmentId + " is not sealed");
+        }
+    }
+
+    private void ensureWritable() {
+        if(isSealed()) {
+            throw new IllegalStateException("Segment " + segmentId + " is sealed");
+        }
+    }
 }
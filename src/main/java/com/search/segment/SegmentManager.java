@@ -6,25 +6,41 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-import com.search.index.InvertedIndex;
-import com.search.index.Posting;
-import com.search.model.Document;
+import com.search.index.IndexReader;
+import com.search.index.OccurrenceIterator;
+import com.search.index.PostingsIterator;
+import com.search.index.TermDictionary;
 import com.search.model.Token;
 
 public class SegmentManager {
 
     private final List<Segment> segments = new ArrayList<>();
+    private final TermDictionary termDictionary;
+    // Bumped whenever the segment set changes; cached query results are stamped with it
+    private volatile long generation;
+
+    public SegmentManager(TermDictionary termDictionary) {
+        this.termDictionary = termDictionary;
+    }
 
     public void addSegment(Segment segment) {
+        segment.seal();
+        segment.bindTerms(termDictionary);
         segments.add(segment);
+        generation++;
     }
 
+    public TermDictionary getTermDictionary() { return termDictionary; }
+
+    public long getGeneration() { return generation; }
+
     public List<Segment> getSegments() {
         return Collections.unmodifiableList(segments);
     }
 
     public void clear() {
         segments.clear();
+        generation++;
     }
 
     public Segment getSegment(int segmentId) {
@@ -42,39 +58,50 @@ public class SegmentManager {
         Segment merged = new Segment(newSegmentId);
         int nextDocId = 1;
 
-        Set<String> seenUrls = new HashSet<>();
+        Set<Integer> seenCanonicalIds = new HashSet<>();
 
+        // Doc id order, so the merged doc ids follow the sources' and are reproducible
         for(Segment s : List.of(A, B)) {
-            for(var entry : s.getDocuments().entrySet()) {
-                Document canonicalDoc = entry.getValue();
-                if(!seenUrls.add(canonicalDoc.getUrl())) {
+            List<List<Token>> tokensByDoc = extractTokens(s.getIndex(), s.docIdLimit());
+            for(int docId = 0; docId < s.docIdLimit(); docId++) {
+                int canonicalId = s.canonicalId(docId);
+                if(canonicalId < 0 || !seenCanonicalIds.add(canonicalId)) {
                     continue;
                 }
 
-                List<Token> tokens = extractTokens(s.getIndex(), entry.getKey());
-                merged.addDocument(nextDocId++, canonicalDoc, tokens);
+                List<Token> tokens = tokensByDoc.get(docId);
+                merged.addDocument(nextDocId++, s.getDocuments().get(docId), tokens != null ? tokens : List.of());
+                tokensByDoc.set(docId, null);
             }
         }
 
+        merged.seal();
+        generation++;
         return merged;
     }
 
-    private List<Token> extractTokens(InvertedIndex index, int docId) {
-        List<Token> tokens = new ArrayList<>();
-
-        index.getIndex().forEach((term, postings) -> {
-            Posting posting = postings.get(docId);
-            if (posting != null) {
-                for (int i = 0; i < posting.getPositions().size(); i++) {
-                    tokens.add(new Token(
-                        term,
-                        posting.getPositions().get(i),
-                        posting.getOffsets().get(i)
-                    ));
+    // Every doc's tokens by doc id (null for a doc with none), in term id order within a doc.
+    // Each term's postings are walked once, so a merge decodes every block once instead of
+    // once per doc, and a lazy index fetches each term once.
+    private static List<List<Token>> extractTokens(IndexReader index, int docIdLimit) {
+        List<List<Token>> tokensByDoc = new ArrayList<>(Collections.nCopies(docIdLimit, null));
+
+        for (int termId = 0; termId < index.termCount(); termId++) {
+            String term = index.term(termId);
+            PostingsIterator postings = index.postings(termId);
+            for (int docId = postings.nextDoc(); docId != PostingsIterator.NO_MORE_DOCS; docId = postings.nextDoc()) {
+                List<Token> tokens = tokensByDoc.get(docId);
+                if (tokens == null) {
+                    tokens = new ArrayList<>();
+                    tokensByDoc.set(docId, tokens);
+                }
+                OccurrenceIterator occurrences = postings.occurrences();
+                while (occurrences.next()) {
+                    tokens.add(new Token(term, occurrences.position(), occurrences.offset()));
                 }
             }
-        });
+        }
 
-        return tokens;
+        return tokensByDoc;
     }
-}
+}
\ No newline at end of file
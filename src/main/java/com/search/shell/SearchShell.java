@@ -1,37 +1,53 @@
 package com.search.shell;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
-import java.util.Set;
 
 import com.search.console.ConsoleUI;
 import com.search.embedding.EmbeddingService;
 import com.search.embedding.EmbeddingStore;
+import com.search.embedding.HnswParams;
 import com.search.fetch.DocumentFetcher;
 import com.search.fetch.impl.WikipediaFetcher;
-import com.search.index.InvertedIndex;
-import com.search.index.Posting;
+import com.search.index.LazyIndex;
+import com.search.index.Norms;
+import com.search.index.OccurrenceIterator;
+import com.search.index.FilterCache;
+import com.search.index.PostingsCache;
+import com.search.index.PostingsIterator;
+import com.search.index.QueryContext;
+import com.search.index.SegmentFile;
+import com.search.index.TermDictionary;
 import com.search.model.Document;
+import com.search.model.DocumentInfo;
 import com.search.model.Token;
 import com.search.processing.TextProcessor;
 import com.search.query.HybridQueryEngine;
-import com.search.query.QueryExecutor;
+import com.search.query.KeywordQuery;
 import com.search.query.QueryParser;
+import com.search.query.QueryResultCache;
+import com.search.query.SearchCursor;
+import com.search.query.SegmentSearcher;
 import com.search.query.SemanticQueryEngine;
 import com.search.query.SnippetGenerator;
 import com.search.rag.RagPipeline;
+import com.search.ranking.Bm25Ranker;
+import com.search.ranking.DotProduct;
 import com.search.ranking.Ranker;
 import com.search.ranking.TfIdfRanker;
 import com.search.segment.Segment;
 import com.search.segment.SegmentManager;
 import com.search.storage.DocumentRepository;
+import com.search.storage.DocumentStore;
 import com.search.storage.IndexRepository;
 import com.search.storage.SegmentRepository;
 import com.search.storage.impl.DocumentRepositoryImpl;
@@ -40,16 +56,41 @@ import com.search.storage.impl.SegmentRepositoryImpl;
 
 public class SearchShell {
 
-    private final SegmentManager segmentManager = new SegmentManager();
+    private static final int TOP_K = 10;
+    // Documents whose bodies one read fetches while re-indexing a merge
+    private static final int MERGE_BATCH = 256;
+    private static final Path SEGMENTS_DIR = Path.of(System.getProperty("search.segments.dir", "segments"));
+    private static final boolean LAZY_POSTINGS = Boolean.getBoolean("search.postings.lazy");
+    // Present while a shell runs; found on startup, the last one did not exit cleanly
+    private static final Path RUNNING_MARKER = SEGMENTS_DIR.resolve("shell.running");
+
+    private static final long CONTENT_CACHE_CHARS = Long.getLong("search.content.cache.chars", 16L << 20);
+    private static final long QUERY_CACHE_BYTES = Long.getLong("search.query.cache.bytes", 8L << 20);
+    private static final Duration QUERY_TIMEOUT = Duration.ofMillis(Long.getLong("search.query.timeout.ms", 2000));
+    // Semantic search walks an HNSW graph over the embeddings; m = 0 scores every embedding instead
+    private static final int HNSW_M = Integer.getInteger("search.hnsw.m", 16);
+    private static final int HNSW_EF_CONSTRUCTION = Integer.getInteger("search.hnsw.ef.construction", 100);
+    private static final int HNSW_EF_SEARCH = Integer.getInteger("search.hnsw.ef.search", 64);
+
+    private final PostingsCache postingsCache = new PostingsCache(Long.getLong("search.postings.cache.bytes", 64L << 20));
+    private final FilterCache filterCache = new FilterCache(Long.getLong("search.filter.cache.bytes", 32L << 20));
+
+    private final TermDictionary termDictionary = new TermDictionary();
+    private final SegmentManager segmentManager = new SegmentManager(termDictionary);
 
     private SegmentRepository segmentRepository;
     private DocumentRepository documentRepository;
+    private DocumentStore documentStore;
     private IndexRepository indexRepository;
 
     private final DocumentFetcher fetcher = new WikipediaFetcher();
     private final TextProcessor processor = new TextProcessor();
     private final QueryParser queryParser = new QueryParser();
-    private final Ranker ranker = new TfIdfRanker();
+    private final Ranker ranker = createRanker(System.getProperty("search.ranker", "bm25"));
+    private final QueryResultCache<SegmentSearcher.Hit> keywordCache = new QueryResultCache<>(QUERY_CACHE_BYTES, hit -> 32);
+    private final QueryResultCache<HybridQueryEngine.HybridResult> hybridCache = new QueryResultCache<>(
+        QUERY_CACHE_BYTES, r -> 64 + 2L * (r.title().length() + r.url().length()));
+    private final SegmentSearcher segmentSearcher = new SegmentSearcher(segmentManager, ranker, SegmentSearcher.defaultParallelism(), keywordCache, filterCache);
     private final SnippetGenerator snippetGenerator = new SnippetGenerator();
 
     // AI components — initialized if GEMINI_API_KEY is available
@@ -57,14 +98,45 @@ public class SearchShell {
     private EmbeddingStore embeddingStore;
     private SemanticQueryEngine semanticQueryEngine;
     private HybridQueryEngine hybridQueryEngine;
+
+    // Last search and where its latest page ended, for 'more'
+    private String lastQuery;
+    private SearchCursor lastCursor;
     private RagPipeline ragPipeline;
     private boolean aiEnabled = false;
+    // Checksum segment files on the next load, not just their headers
+    private boolean verifySegmentFiles = false;
+
+    private static Ranker createRanker(String name) {
+        return switch (name) {
+            case "bm25" -> new Bm25Ranker();
+            case "tfidf" -> new TfIdfRanker();
+            default -> throw new IllegalArgumentException("Unknown ranker: " + name);
+        };
+    }
 
     public void run() {
+        verifySegmentFiles = markRunning();
         initializeFromRepo();
         repl();
     }
 
+    // Returns true when the previous shell left its marker behind, so files it was writing may be damaged
+    private static boolean markRunning() {
+        try {
+            Files.createDirectories(SEGMENTS_DIR);
+            if(Files.exists(RUNNING_MARKER)) {
+                System.out.println("Previous shell did not exit cleanly; checksumming segment files.");
+                return true;
+            }
+            Files.createFile(RUNNING_MARKER);
+            return false;
+        } catch (IOException e) {
+            System.err.println("Warning: cannot mark shell as running: " + e.getMessage() + "; checksumming segment files");
+            return true;
+        }
+    }
+
     private void initializeFromRepo() {
         try {
             Connection connection = DriverManager.getConnection(
@@ -75,38 +147,121 @@ public class SearchShell {
 
             segmentRepository = new SegmentRepositoryImpl(connection);
             documentRepository = new DocumentRepositoryImpl(connection);
-            indexRepository = new IndexRepositoryImpl(connection);
+            indexRepository = new IndexRepositoryImpl(connection, termDictionary);
+            documentStore = new DocumentStore(documentRepository, CONTENT_CACHE_CHARS);
 
             // Initialize AI components
             initializeAI(connection);
 
             segmentManager.clear();
+            postingsCache.clear();
+            filterCache.clear();
+            // Cached pages reference the segments being replaced
+            keywordCache.clear();
+            hybridCache.clear();
 
-            Map<Integer, Document> canonicalDocs = documentRepository.loadCanonicalDocuments();
+            documentStore.reload();
+            termDictionary.reload(indexRepository.loadTerms());
 
             for(int segmentId : segmentRepository.loadActiveSegmentIds()) {
-                Segment segment = new Segment(segmentId);
-                InvertedIndex index = indexRepository.loadIndexForSegment(segmentId);
-                segment.setIndex(index);
-                Map<Integer, Integer> segmentDocs = documentRepository.loadSegmentDocuments(segmentId);
-
-                for(var entry : segmentDocs.entrySet()) {
-                    int docId = entry.getKey();
-                    int canonicalId = entry.getValue();
-                    Document doc = canonicalDocs.get(canonicalId);
-                    if(doc == null) {
-                        throw new IllegalStateException("Missing canonical document " + canonicalId);
-                    }
-                    segment.addDocument(docId, doc);
-                }
-                segmentManager.addSegment(segment);
+                segmentManager.addSegment(loadSegment(segmentId));
             }
             System.out.println("Loaded " + segmentManager.getSegments().size() + " segments.");
+            verifySegmentFiles = false;
         } catch (Exception e) {
             throw new RuntimeException("Failed to initialize", e);
         }
     }
 
+    // Maps the segment file when a valid one exists (checksummed only when verifySegmentFiles is set). Otherwise either rebuilds from the database and
+    // rewrites the file, or in lazy mode loads only the dictionary and fetches postings per term.
+    private Segment loadSegment(int segmentId) throws IOException {
+        Path path = SegmentFile.path(SEGMENTS_DIR, segmentId);
+        if(Files.exists(path)) {
+            try {
+                SegmentFile file = SegmentFile.open(path, verifySegmentFiles);
+                if(file.getSegmentId() != segmentId) {
+                    throw new IOException("Segment file " + path + " belongs to segment " + file.getSegmentId());
+                }
+                return new Segment(segmentId, file.getIndex(), resolveDocuments(file.loadDocMap()));
+            } catch (IOException e) {
+                System.err.println("Warning: " + e.getMessage() + "; rebuilding segment " + segmentId + " from database");
+            }
+        }
+
+        Map<Integer, Integer> segmentDocs = documentRepository.loadSegmentDocuments(segmentId);
+        if(LAZY_POSTINGS) {
+            LazyIndex index = new LazyIndex(
+                segmentId,
+                indexRepository.loadTermDictionary(segmentId),
+                Norms.fromLengths(indexRepository.loadDocLengths(segmentId)),
+                term -> indexRepository.loadTermPostings(segmentId, term),
+                postingsCache
+            );
+            return new Segment(segmentId, index, resolveDocuments(segmentDocs));
+        }
+
+        Segment segment = new Segment(segmentId);
+        segment.setIndex(indexRepository.loadIndexForSegment(segmentId));
+        for(var entry : resolveDocuments(segmentDocs).entrySet()) {
+            segment.addDocument(entry.getKey(), entry.getValue());
+        }
+        segment.seal();
+        writeSegmentFile(segment, segmentDocs);
+        return segment;
+    }
+
+    private Map<Integer, DocumentInfo> resolveDocuments(Map<Integer, Integer> docToCanonical) {
+        Map<Integer, DocumentInfo> documents = new HashMap<>();
+        for(var entry : docToCanonical.entrySet()) {
+            DocumentInfo doc = documentStore.info(entry.getValue());
+            if(doc == null) {
+                throw new IllegalStateException("Missing canonical document " + entry.getValue());
+            }
+            documents.put(entry.getKey(), doc);
+        }
+        return documents;
+    }
+
+    // Best effort: the database stays the source of truth, a missing file is rebuilt on the next load
+    private void writeSegmentFile(Segment segment, Map<Integer, Integer> docToCanonical) {
+        try {
+            segment.writeTo(SegmentFile.path(SEGMENTS_DIR, segment.getSegmentId()), docToCanonical);
+        } catch (IOException e) {
+            System.err.println("Warning: failed to write segment file for segment " + segment.getSegmentId() + ": " + e.getMessage());
+        }
+    }
+
+    private static void deleteSegmentFile(int segmentId) {
+        try {
+            Files.deleteIfExists(SegmentFile.path(SEGMENTS_DIR, segmentId));
+        } catch (IOException e) {
+            System.err.println("Warning: failed to delete segment file for segment " + segmentId + ": " + e.getMessage());
+        }
+    }
+
+    // Checksums every active segment's file; corrupt ones are deleted and rebuilt from the database
+    private void verifySegments() throws IOException {
+        int verified = 0;
+        int corrupt = 0;
+        for(int segmentId : segmentRepository.loadActiveSegmentIds()) {
+            Path path = SegmentFile.path(SEGMENTS_DIR, segmentId);
+            if(!Files.exists(path)) continue;
+            try {
+                SegmentFile.verify(path);
+                verified++;
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                Files.delete(path);
+                corrupt++;
+            }
+        }
+        System.out.println("Verified " + verified + " segment files, " + corrupt + " corrupt.");
+        if(corrupt > 0) {
+            initializeFromRepo();
+        }
+    }
+
     private void initializeAI(Connection connection) {
         String apiKey = System.getenv("GEMINI_API_KEY");
         if (apiKey == null || apiKey.isBlank()) {
@@ -115,13 +270,22 @@ public class SearchShell {
             return;
         }
 
-        embeddingService = new EmbeddingService(apiKey);
-        embeddingStore = new EmbeddingStore(connection);
+        // Embeddings do not depend on segments, so the resident matrix and its graph are built once
+        // and survive every load and merge; only the engines are rewired to the new document store
+        if (embeddingStore == null) {
+            embeddingService = new EmbeddingService(apiKey);
+            HnswParams hnsw = HNSW_M > 0 ? new HnswParams(HNSW_M, HNSW_EF_CONSTRUCTION, HNSW_EF_SEARCH) : null;
+            embeddingStore = new EmbeddingStore(connection, SegmentSearcher.defaultParallelism(),
+                hnsw, SEGMENTS_DIR.resolve("embeddings.hnsw"));
+            System.out.println("Loaded " + embeddingStore.matrix().size() + " embeddings"
+                + (hnsw != null ? " into an HNSW graph" : "")
+                + (DotProduct.isVectorized() ? " (SIMD scoring)." : " (scalar scoring; run with --add-modules jdk.incubator.vector for SIMD)."));
+        }
         semanticQueryEngine = new SemanticQueryEngine(embeddingService, embeddingStore);
         hybridQueryEngine = new HybridQueryEngine(
-            segmentManager, queryParser, ranker, semanticQueryEngine, documentRepository
+            segmentSearcher, queryParser, semanticQueryEngine, documentStore, hybridCache
         );
-        ragPipeline = new RagPipeline(hybridQueryEngine, documentRepository, apiKey);
+        ragPipeline = new RagPipeline(hybridQueryEngine, documentStore, apiKey);
         aiEnabled = true;
         System.out.println("AI features enabled (semantic search, RAG).");
     }
@@ -142,6 +306,13 @@ public class SearchShell {
         }
 
         scanner.close();
+        segmentSearcher.close();
+        if (embeddingStore != null) embeddingStore.close();
+        try {
+            Files.deleteIfExists(RUNNING_MARKER);
+        } catch (IOException e) {
+            System.err.println("Warning: failed to clear " + RUNNING_MARKER + ": " + e.getMessage());
+        }
     }
 
     private void handleInput(String input) {
@@ -159,11 +330,17 @@ public class SearchShell {
             else if (input.startsWith("semantic-search "))
                 semanticSearch(input.substring(16).trim());
             else if (input.startsWith("search "))
-                search(input.substring(7).trim());
+                search(input.substring(7).trim(), null);
+            else if (input.equals("more"))
+                more();
             else if (input.startsWith("ask "))
                 ask(input.substring(4).trim());
+            else if (input.equals("cache-stats"))
+                cacheStats();
             else if (input.equals("reindex-embeddings"))
                 reindexEmbeddings();
+            else if (input.equals("verify"))
+                verifySegments();
             else if (input.startsWith("merge ")) {
                 String[] parts = input.split("\\s+");
                 if(parts.length != 3) {
@@ -199,8 +376,9 @@ public class SearchShell {
         List<Token> tokens = processor.process(doc.getContent());
         indexRepository.appendDocument(segmentId, docId, canonicalId, tokens);
 
-        segment.addDocument(docId, doc, tokens);
+        segment.addDocument(docId, documentStore.add(canonicalId, doc), tokens);
         segmentManager.addSegment(segment);
+        writeSegmentFile(segment, Map.of(docId, canonicalId));
 
         // Generate and store embedding
         embedDocument(canonicalId, doc);
@@ -231,6 +409,7 @@ public class SearchShell {
             Segment segment = new Segment(segmentId);
 
             Map<Integer, Integer> mappingResult = documentRepository.mapToSegment(segmentId, newCanonicalIds);
+            Map<Integer, Integer> docToCanonical = new HashMap<>();
 
             for(Document doc : docs) {
                 int canonicalId = canonicalIds.get(doc.getUrl());
@@ -239,13 +418,15 @@ public class SearchShell {
 
                 List<Token> tokens = processor.process(doc.getContent());
                 indexRepository.appendDocument(segmentId, docId, canonicalId, tokens);
-                segment.addDocument(docId, doc, tokens);
+                segment.addDocument(docId, documentStore.add(canonicalId, doc), tokens);
+                docToCanonical.put(docId, canonicalId);
 
                 // Generate and store embedding
                 embedDocument(canonicalId, doc);
             }
 
             segmentManager.addSegment(segment);
+            writeSegmentFile(segment, docToCanonical);
             System.out.println("Created segment " + segmentId + " | docs=" + segment.getDocuments().size());
         } catch (Exception e) {
             throw new RuntimeException("Failed to seed file: " + path, e);
@@ -268,75 +449,108 @@ public class SearchShell {
             return;
         }
 
-        Map<Integer, Document> canonicalDocs = documentRepository.loadCanonicalDocuments();
         int success = 0;
         int failed = 0;
 
-        for (var entry : canonicalDocs.entrySet()) {
-            int id = entry.getKey();
-            Document doc = entry.getValue();
+        for (DocumentInfo doc : documentStore.infos()) {
+            int id = doc.canonicalId();
 
             // Check if already has embedding
             float[] existing = embeddingStore.getEmbedding(id);
             if (existing != null) {
-                System.out.println("  Skipping (already has embedding): " + doc.getTitle());
+                System.out.println("  Skipping (already has embedding): " + doc.title());
                 continue;
             }
 
             try {
-                float[] embedding = embeddingService.embed(doc.getTitle() + ". " + doc.getContent());
+                // Bypasses the content cache: a bulk pass would only evict the hot documents
+                float[] embedding = embeddingService.embed(doc.title() + ". " + documentRepository.loadContent(id));
                 embeddingStore.storeEmbedding(id, embedding);
                 success++;
-                System.out.println("  Embedded: " + doc.getTitle());
+                System.out.println("  Embedded: " + doc.title());
             } catch (Exception e) {
                 failed++;
-                System.err.println("  Failed: " + doc.getTitle() + " — " + e.getMessage());
+                System.err.println("  Failed: " + doc.title() + " — " + e.getMessage());
             }
         }
 
+        // New embeddings change semantic results without touching the segment generation
+        if (success > 0) hybridCache.clear();
         System.out.println("Reindex complete. Success: " + success + ", Failed: " + failed);
     }
 
-    private void search(String query) {
+    // 'after' is null for the first page
+    private void search(String query, SearchCursor after) {
+        lastQuery = query;
         if (aiEnabled) {
-            hybridSearch(query);
+            hybridSearch(query, after);
+        } else {
+            keywordSearch(query, after);
+        }
+    }
+
+    private void more() {
+        if (lastQuery == null) {
+            System.out.println("Nothing to continue; run a search first.");
+        } else if (lastCursor == null) {
+            System.out.println("No more results.");
         } else {
-            keywordSearch(query);
+            search(lastQuery, lastCursor);
         }
     }
 
-    private void hybridSearch(String query) {
-        List<HybridQueryEngine.HybridResult> results = hybridQueryEngine.search(query);
+    private void hybridSearch(String query, SearchCursor after) {
+        QueryContext context = QueryContext.withTimeout(QUERY_TIMEOUT);
+        HybridQueryEngine.HybridPage page = after == null
+            ? hybridQueryEngine.search(query, 0, TOP_K, context)
+            : hybridQueryEngine.searchAfter(query, after, TOP_K, context);
+        List<HybridQueryEngine.HybridResult> results = page.results();
         List<String> terms = queryParser.parse(query);
+        lastCursor = page.hasMore() ? SearchCursor.after(page) : null;
 
         ConsoleUI.header("HYBRID SEARCH RESULTS");
+        printPartial(context);
+        printLeg("Keyword leg", page.keyword());
+        printLeg("Semantic leg", page.semantic());
 
+        if (page.end() == HybridQueryEngine.PageEnd.CURSOR_INVALID) {
+            System.out.println("The ranking changed since the last page (semantic search "
+                + (page.isFused() ? "is back" : "was dropped") + "); run the search again.");
+            return;
+        }
         if (results.isEmpty()) {
-            System.out.println("No results found.");
+            System.out.println(after == null ? "No results found." : "No more results.");
             return;
         }
 
+        // Keyword hits get snippets; their bodies come in one batched read
+        Map<Integer, String> contents = documentStore.contents(results.stream()
+            .filter(r -> r.segment() != null && r.docId() >= 0)
+            .mapToInt(r -> (int) r.canonicalDocId())
+            .toArray());
+
         for (HybridQueryEngine.HybridResult r : results) {
             ConsoleUI.kv("Title", r.title());
             ConsoleUI.kv("URL", r.url());
-            ConsoleUI.kv("Score", String.format("%.6f (RRF)", r.score()));
+            ConsoleUI.kv("Score", String.format(page.isFused() ? "%.6f (RRF)" : "%.6f (keyword)", r.score()));
 
             if (r.segment() != null && r.docId() >= 0) {
                 ConsoleUI.kv("Segment", String.valueOf(r.segment().getSegmentId()));
-                Document doc = r.segment().getDocuments().get(r.docId());
-                if (doc != null) {
+                DocumentInfo doc = r.segment().getDocuments().get(r.docId());
+                String content = doc == null ? null : contents.get(doc.canonicalId());
+                if (content != null) {
                     for (String term : terms) {
-                        var postings = r.segment().getIndex().getPostings(term);
-                        Posting posting = postings.get(r.docId());
-                        if (posting == null) continue;
+                        PostingsIterator postings = r.segment().getIndex().postings(term);
+                        if (postings.advance(r.docId()) != r.docId()) continue;
 
-                        for (int i = 0; i < posting.getOffsets().size(); i++) {
+                        OccurrenceIterator occurrences = postings.occurrences();
+                        while (occurrences.next()) {
                             String snippet = snippetGenerator.generate(
-                                doc.getContent(),
-                                posting.getOffsets().get(i),
+                                content,
+                                occurrences.offset(),
                                 term
                             );
-                            System.out.println("SNIPPET [" + term + " #" + (i + 1) + "]: " + snippet);
+                            System.out.println("SNIPPET [" + term + " #" + (occurrences.index() + 1) + "]: " + snippet);
                         }
                     }
                 }
@@ -344,36 +558,42 @@ public class SearchShell {
 
             ConsoleUI.line();
         }
+        if (!page.hasMore()) {
+            System.out.println("End of results; hybrid search fuses at most " + page.candidateCap() + " candidates.");
+        }
     }
 
-    private void keywordSearch(String query) {
-        List<String> terms = queryParser.parse(query);
-        List<SearchResult> results = new ArrayList<>();
-
-        for(Segment segment : segmentManager.getSegments()) {
-            InvertedIndex index = segment.getIndex();
-            QueryExecutor executor = new QueryExecutor(index);
-            Set<Integer> matchingDocIds = executor.execute(terms);
-
-            if(matchingDocIds.isEmpty()) continue;
+    private void keywordSearch(String query, SearchCursor after) {
+        KeywordQuery keywordQuery = queryParser.parseQuery(query);
+        List<String> terms = keywordQuery.terms();
+        QueryContext context = QueryContext.withTimeout(QUERY_TIMEOUT);
+        List<SegmentSearcher.Hit> results = after == null
+            ? segmentSearcher.topK(keywordQuery, 0, TOP_K, context)
+            : segmentSearcher.searchAfter(keywordQuery, after, TOP_K, context);
+        lastCursor = results.isEmpty() ? null : SearchCursor.after(results.get(results.size() - 1));
 
-            Map<Integer, Double> scores = ranker.rank(terms, index, segment.getDocuments().size());
+        ConsoleUI.header("SEARCH RESULTS");
+        printPartial(context);
 
-            for(int docId : matchingDocIds) {
-                double score = scores.getOrDefault(docId, 0.0);
-                results.add(new SearchResult(segment, docId, score));
-            }
+        Map<Integer, String> contents = documentStore.contents(results.stream()
+            .mapToInt(r -> r.segment().canonicalId(r.docId()))
+            .toArray());
+        for(SegmentSearcher.Hit r : results) {
+            printResult(r.segment(), r.docId(), r.score(), terms, contents);
         }
+    }
 
-        results.sort(Comparator.comparingDouble(r -> -r.score));
-
-        ConsoleUI.header("SEARCH RESULTS");
-
-        for(SearchResult r : results) {
-            printResult(r.segment, r.docId, r.score, terms);
+    private static void printPartial(QueryContext context) {
+        if (context.isPartial()) {
+            System.out.println("(partial results: the query ran out of time after " + QUERY_TIMEOUT.toMillis() + " ms)");
         }
     }
 
+    private static void printLeg(String label, HybridQueryEngine.LegTiming leg) {
+        ConsoleUI.kv(label, String.format("%.1f ms (%s)", leg.elapsed().toNanos() / 1e6,
+            leg.status().name().toLowerCase()));
+    }
+
     private void semanticSearch(String query) {
         if (!aiEnabled) {
             System.out.println("Semantic search requires GEMINI_API_KEY to be set.");
@@ -381,10 +601,10 @@ public class SearchShell {
         }
 
         try {
-            List<SemanticQueryEngine.ScoredDocument> results = semanticQueryEngine.search(query);
-            Map<Integer, Document> canonicalDocs = documentRepository.loadCanonicalDocuments();
-
+            QueryContext context = QueryContext.withTimeout(QUERY_TIMEOUT);
+            List<SemanticQueryEngine.ScoredDocument> results = semanticQueryEngine.search(query, TOP_K, context);
             ConsoleUI.header("SEMANTIC SEARCH RESULTS");
+            printPartial(context);
 
             if (results.isEmpty()) {
                 System.out.println("No results found.");
@@ -393,12 +613,12 @@ public class SearchShell {
 
             int shown = 0;
             for (SemanticQueryEngine.ScoredDocument r : results) {
-                if (shown >= 10) break;
-                Document doc = canonicalDocs.get((int) r.canonicalDocId());
+                if (shown >= TOP_K) break;
+                DocumentInfo doc = documentStore.info((int) r.canonicalDocId());
                 if (doc == null) continue;
 
-                ConsoleUI.kv("Title", doc.getTitle());
-                ConsoleUI.kv("URL", doc.getUrl());
+                ConsoleUI.kv("Title", doc.title());
+                ConsoleUI.kv("URL", doc.url());
                 ConsoleUI.kv("Score", String.format("%.6f (cosine)", r.score()));
                 ConsoleUI.line();
                 shown++;
@@ -421,59 +641,100 @@ public class SearchShell {
         }
     }
 
-    private void printResult(Segment segment, int docId, double score, List<String> terms) {
-        Document doc = segment.getDocuments().get(docId);
+    private void printResult(Segment segment, int docId, double score, List<String> terms, Map<Integer, String> contents) {
+        DocumentInfo doc = segment.getDocuments().get(docId);
 
         ConsoleUI.kv("Segment", String.valueOf(segment.getSegmentId()));
-        ConsoleUI.kv("Title", doc.getTitle());
-        ConsoleUI.kv("URL", doc.getUrl());
+        ConsoleUI.kv("Title", doc.title());
+        ConsoleUI.kv("URL", doc.url());
         ConsoleUI.kv("Score", String.format("%.4f", score));
 
+        String content = contents.get(doc.canonicalId());
         for (String term : terms) {
-            Posting posting = segment.getIndex().getPostings(term).get(docId);
-            if(posting == null) continue;
+            if(content == null) break;
+            PostingsIterator postings = segment.getIndex().postings(term);
+            if(postings.advance(docId) != docId) continue;
 
-            for(int i = 0; i < posting.getOffsets().size(); i++) {
+            OccurrenceIterator occurrences = postings.occurrences();
+            while(occurrences.next()) {
                 String snippet = snippetGenerator.generate(
-                    doc.getContent(),
-                    posting.getOffsets().get(i),
+                    content,
+                    occurrences.offset(),
                     term
                 );
-                System.out.println("SNIPPET [" + term + " #" + (i + 1) + "]: " + snippet);
+                System.out.println("SNIPPET [" + term + " #" + (occurrences.index() + 1) + "]: " + snippet);
             }
         }
 
         ConsoleUI.line();
     }
 
+    private void cacheStats() {
+        PostingsCache.Stats stats = postingsCache.stats();
+        System.out.printf(
+            "Postings cache: %d entries | %d / %d bytes | hits=%d misses=%d evictions=%d | hit rate %.1f%%%n",
+            stats.entries(), stats.bytes(), stats.maxBytes(),
+            stats.hits(), stats.misses(), stats.evictions(), 100 * stats.hitRate()
+        );
+
+        FilterCache.Stats filters = filterCache.stats();
+        System.out.printf(
+            "Filter cache:   %d entries | %d / %d bytes | hits=%d misses=%d admissions=%d evictions=%d | hit rate %.1f%%%n",
+            filters.entries(), filters.bytes(), filters.maxBytes(),
+            filters.hits(), filters.misses(), filters.admissions(), filters.evictions(), 100 * filters.hitRate()
+        );
+
+        DocumentStore.Stats content = documentStore.stats();
+        System.out.printf(
+            "Content cache:  %d entries | %d / %d chars | hits=%d misses=%d | hit rate %.1f%%%n",
+            content.entries(), content.chars(), content.maxChars(),
+            content.hits(), content.misses(), 100 * content.hitRate()
+        );
+
+        printQueryCacheStats("Keyword results:", keywordCache.stats());
+        printQueryCacheStats("Hybrid results: ", hybridCache.stats());
+    }
+
+    private static void printQueryCacheStats(String label, QueryResultCache.Stats stats) {
+        System.out.printf(
+            "%s %d entries | %d / %d bytes | hits=%d misses=%d stale=%d evictions=%d | hit rate %.1f%%%n",
+            label, stats.entries(), stats.bytes(), stats.maxBytes(),
+            stats.hits(), stats.misses(), stats.stale(), stats.evictions(), 100 * stats.hitRate()
+        );
+    }
+
     private void mergeSegments(int segAId, int segBId) {
         int newSegmentId = segmentRepository.createSegment();
         Segment merged = segmentManager.merge(segAId, segBId, newSegmentId);
 
+        // mapToSegment numbers docs from 1 in list order, which matches the merged segment's doc ids
         List<Integer> canonicalIds = new ArrayList<>();
-        for(Document d : merged.getDocuments().values()) {
-            canonicalIds.add(
-                documentRepository
-                    .saveCanonicalDocuments(List.of(d))
-                    .get(d.getUrl())
-            );
+        for(int docId = 0; docId < merged.docIdLimit(); docId++) {
+            int canonicalId = merged.canonicalId(docId);
+            if(canonicalId >= 0) canonicalIds.add(canonicalId);
         }
 
         Map<Integer, Integer> mapping = documentRepository.mapToSegment(newSegmentId, canonicalIds);
 
-        for(var entry : mapping.entrySet()) {
-            int canonicalId = entry.getKey();
-            int docId = entry.getValue();
-            Document doc = documentRepository.loadCanonicalDocuments().get(canonicalId);
-
-            List<Token> tokens = processor.process(doc.getContent());
-            indexRepository.appendDocument(newSegmentId, docId, canonicalId, tokens);
+        // Bodies are read in batches straight from the repository; a bulk pass would only evict
+        // the hot documents from the content cache
+        for(int from = 0; from < canonicalIds.size(); from += MERGE_BATCH) {
+            int[] batch = canonicalIds.subList(from, Math.min(from + MERGE_BATCH, canonicalIds.size()))
+                .stream().mapToInt(Integer::intValue).toArray();
+            Map<Integer, String> contents = documentRepository.loadContents(batch);
+            for(int canonicalId : batch) {
+                List<Token> tokens = processor.process(contents.get(canonicalId));
+                indexRepository.appendDocument(newSegmentId, mapping.get(canonicalId), canonicalId, tokens);
+            }
         }
 
         segmentRepository.deactivateSegment(segAId);
         segmentRepository.deactivateSegment(segBId);
 
         initializeFromRepo();
+        // The reload dropped the old segments, so their files would never be read again
+        deleteSegmentFile(segAId);
+        deleteSegmentFile(segBId);
 
         System.out.println("Merged segments " + segAId +" + " + segBId +" → " + newSegmentId);
     }
@@ -492,7 +753,10 @@ public class SearchShell {
         System.out.println("      Seed multiple Wikipedia pages from a file (one key per line)");
         System.out.println();
         System.out.println("  search <query>");
-        System.out.println("      Search indexed documents (hybrid: TF-IDF + semantic if AI enabled)");
+        System.out.println("      Search indexed documents (hybrid: keyword + semantic if AI enabled)");
+        System.out.println();
+        System.out.println("  more");
+        System.out.println("      Show the next page of the last search");
         System.out.println();
         System.out.println("  semantic-search <query>");
         System.out.println("      Pure semantic vector search (requires GEMINI_API_KEY)");
@@ -503,9 +767,15 @@ public class SearchShell {
         System.out.println("  reindex-embeddings");
         System.out.println("      Generate embeddings for all documents missing them (requires GEMINI_API_KEY)");
         System.out.println();
+        System.out.println("  cache-stats");
+        System.out.println("      Show postings, filter, document content and query result cache statistics");
+        System.out.println();
         System.out.println("  merge <segA> <segB>");
         System.out.println("      Merge two segments");
         System.out.println();
+        System.out.println("  verify");
+        System.out.println("      Checksum the segment files; corrupt ones are rebuilt from the database");
+        System.out.println();
         System.out.println("  help");
         System.out.println("      Show this help message");
         System.out.println();
@@ -513,16 +783,4 @@ public class SearchShell {
         System.out.println("      Exit the shell");
         System.out.println();
     }
-
-    private static class SearchResult {
-        final Segment segment;
-        final int docId;
-        final double score;
-
-        SearchResult(Segment segment, int docId, double score) {
-            this.segment = segment;
-            this.docId = docId;
-            this.score = score;
-        }
-    }
 }
@@ -4,10 +4,17 @@ import java.util.List;
 import java.util.Map;
 
 import com.search.model.Document;
+import com.search.model.DocumentInfo;
 
 public interface DocumentRepository {
     Map<String, Integer> saveCanonicalDocuments(List<Document> documents);
-    Map<Integer, Document> loadCanonicalDocuments();
+    Map<Integer, DocumentInfo> loadDocumentInfos();
+
+    // Returns null for unknown canonical ids
+    String loadContent(int canonicalDocId);
+
+    // Contents of several documents in one read; unknown ids are left out of the map
+    Map<Integer, String> loadContents(int[] canonicalDocIds);
     Map<Integer, Integer> mapToSegment(int segmentId, List<Integer> canonicalDocIds);
     Map<Integer, Integer> loadSegmentDocuments(int segmentId);
 }
@@ -0,0 +1,133 @@
+package com.search.storage;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.search.model.Document;
+import com.search.model.DocumentInfo;
+
+// Keeps compact metadata for every canonical document resident and fetches content by canonical
+// id only when a snippet or RAG context needs it, batching the ids one result page needs into a
+// single read. Recently used bodies stay in an LRU cache bounded by total characters.
+public final class DocumentStore {
+
+    public record Stats(long hits, long misses, int entries, long chars, long maxChars) {
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+    }
+
+    private final DocumentRepository documentRepository;
+    private final long maxChars;
+    private final Map<Integer, DocumentInfo> infos = new ConcurrentHashMap<>();
+    private final LinkedHashMap<Integer, String> contents = new LinkedHashMap<>(16, 0.75f, true);
+    private long chars;
+    private long hits;
+    private long misses;
+
+    public DocumentStore(DocumentRepository documentRepository, long maxChars) {
+        if(maxChars <= 0) {
+            throw new IllegalArgumentException("maxChars must be positive: " + maxChars);
+        }
+        this.documentRepository = documentRepository;
+        this.maxChars = maxChars;
+    }
+
+    public void reload() {
+        Map<Integer, DocumentInfo> loaded = documentRepository.loadDocumentInfos();
+        infos.clear();
+        infos.putAll(loaded);
+        synchronized (this) {
+            contents.clear();
+            chars = 0;
+        }
+    }
+
+    // Registers a freshly saved document; its content is likely to be needed again soon
+    public DocumentInfo add(int canonicalId, Document doc) {
+        DocumentInfo info = new DocumentInfo(canonicalId, doc.getUrl(), doc.getTitle(), doc.getContent().length());
+        infos.put(canonicalId, info);
+        cache(canonicalId, doc.getContent());
+        return info;
+    }
+
+    // Returns null for unknown canonical ids
+    public DocumentInfo info(int canonicalId) {
+        return infos.get(canonicalId);
+    }
+
+    public Iterable<DocumentInfo> infos() {
+        return infos.values();
+    }
+
+    public String content(int canonicalId) {
+        synchronized (this) {
+            String cached = contents.get(canonicalId);
+            if(cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+
+        String content = documentRepository.loadContent(canonicalId);
+        if(content != null) {
+            cache(canonicalId, content);
+        }
+        return content;
+    }
+
+    // Contents of several documents, fetching the ones not cached with a single repository read.
+    // Unknown ids are left out of the map.
+    public Map<Integer, String> contents(int[] canonicalIds) {
+        int[] ids = Arrays.stream(canonicalIds).distinct().toArray();
+        Map<Integer, String> found = new HashMap<>(ids.length * 2);
+        int[] missing = new int[ids.length];
+        int missed = 0;
+        synchronized (this) {
+            for(int id : ids) {
+                String cached = contents.get(id);
+                if(cached != null) {
+                    hits++;
+                    found.put(id, cached);
+                } else {
+                    misses++;
+                    missing[missed++] = id;
+                }
+            }
+        }
+        if(missed == 0) return found;
+
+        Map<Integer, String> loaded = documentRepository.loadContents(Arrays.copyOf(missing, missed));
+        for(Map.Entry<Integer, String> entry : loaded.entrySet()) {
+            cache(entry.getKey(), entry.getValue());
+            found.put(entry.getKey(), entry.getValue());
+        }
+        return found;
+    }
+
+    private synchronized void cache(int canonicalId, String content) {
+        if(content.length() > maxChars) return;
+
+        String previous = contents.put(canonicalId, content);
+        if(previous != null) {
+            chars -= previous.length();
+        }
+        chars += content.length();
+
+        Iterator<String> eldest = contents.values().iterator();
+        while(chars > maxChars) {
+            chars -= eldest.next().length();
+            eldest.remove();
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, contents.size(), chars, maxChars);
+    }
+}
@@ -1,6 +1,7 @@
 package com.search.storage;
 
 import java.util.List;
+import java.util.Map;
 
 import com.search.index.InvertedIndex;
 import com.search.model.Token;
@@ -8,4 +9,16 @@ import com.search.model.Token;
 public interface IndexRepository {
     void appendDocument(int segmentId, int docId, int canonicalDocId, List<Token> tokens);
     InvertedIndex loadIndexForSegment(int segmentId);
+
+    // The whole terms table, id -> term
+    Map<Integer, String> loadTerms();
+
+    // Term -> document frequency within the segment, without loading any postings
+    Map<String, Integer> loadTermDictionary(int segmentId);
+
+    // Doc id -> length in tokens (sum of term frequencies) within the segment
+    Map<Integer, Integer> loadDocLengths(int segmentId);
+
+    // Postings of a single term within the segment
+    InvertedIndex loadTermPostings(int segmentId, String term);
 }
@@ -9,6 +9,7 @@ import java.util.List;
 import java.util.Map;
 
 import com.search.model.Document;
+import com.search.model.DocumentInfo;
 import com.search.storage.DocumentRepository;
 
 public class DocumentRepositoryImpl implements DocumentRepository {
@@ -35,8 +36,14 @@ public class DocumentRepositoryImpl implements DocumentRepository {
         VALUES (?, ?, ?)
     """;
 
-    private static final String SELECT_CANONICAL_DOCS =
-        "SELECT id, url, title, content FROM canonical_documents";
+    private static final String SELECT_DOCUMENT_INFOS =
+        "SELECT id, url, title, char_length(content) AS length FROM canonical_documents";
+
+    private static final String SELECT_CONTENT_BY_ID =
+        "SELECT content FROM canonical_documents WHERE id = ?";
+
+    private static final String SELECT_CONTENTS_BY_IDS =
+        "SELECT id, content FROM canonical_documents WHERE id = ANY(?)";
 
     private static final String SELECT_SEGMENT_DOCS =
         "SELECT doc_id, canonical_doc_id FROM segment_documents WHERE segment_id = ?";
@@ -96,25 +103,52 @@ public class DocumentRepositoryImpl implements DocumentRepository {
     }
 
     @Override
-    public Map<Integer, Document> loadCanonicalDocuments() {
-        Map<Integer, Document> docs = new HashMap<>();
+    public Map<Integer, DocumentInfo> loadDocumentInfos() {
+        Map<Integer, DocumentInfo> infos = new HashMap<>();
 
-        try (PreparedStatement ps = connection.prepareStatement(SELECT_CANONICAL_DOCS)) {
+        try (PreparedStatement ps = connection.prepareStatement(SELECT_DOCUMENT_INFOS)) {
             ResultSet rs = ps.executeQuery();
             while (rs.next()) {
-                docs.put(
-                    rs.getInt("id"),
-                    new Document(
-                        rs.getString("url"),
-                        rs.getString("title"),
-                        rs.getString("content")
-                    )
-                );
+                int id = rs.getInt("id");
+                infos.put(id, new DocumentInfo(id, rs.getString("url"), rs.getString("title"), rs.getInt("length")));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return infos;
+    }
+
+    @Override
+    public String loadContent(int canonicalDocId) {
+        try (PreparedStatement ps = connection.prepareStatement(SELECT_CONTENT_BY_ID)) {
+            ps.setInt(1, canonicalDocId);
+            ResultSet rs = ps.executeQuery();
+            return rs.next() ? rs.getString("content") : null;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Map<Integer, String> loadContents(int[] canonicalDocIds) {
+        Map<Integer, String> contents = new HashMap<>();
+        if (canonicalDocIds.length == 0) return contents;
+
+        Integer[] ids = new Integer[canonicalDocIds.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = canonicalDocIds[i];
+        }
+
+        try (PreparedStatement ps = connection.prepareStatement(SELECT_CONTENTS_BY_IDS)) {
+            ps.setArray(1, connection.createArrayOf("integer", ids));
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                contents.put(rs.getInt("id"), rs.getString("content"));
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
-        return docs;
+        return contents;
     }
 
     @Override
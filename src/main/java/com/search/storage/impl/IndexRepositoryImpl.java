@@ -10,21 +10,35 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 import com.search.index.InvertedIndex;
-import com.search.index.Posting;
+import com.search.index.TermDictionary;
+import com.search.index.codec.PostingsCodec;
+import com.search.index.codec.PostingsCodecs;
 import com.search.model.Token;
 import com.search.storage.IndexRepository;
 
 public class IndexRepositoryImpl implements IndexRepository {
 
     private final Connection connection;
+    private final TermDictionary termDictionary;
+    private final PostingsCodec codec;
 
-    public IndexRepositoryImpl(Connection connection) {
+    // New terms are registered in termDictionary as they are inserted
+    public IndexRepositoryImpl(Connection connection, TermDictionary termDictionary) {
+        this(connection, termDictionary, PostingsCodecs.getDefault());
+    }
+
+    public IndexRepositoryImpl(Connection connection, TermDictionary termDictionary, PostingsCodec codec) {
         this.connection = connection;
+        this.termDictionary = termDictionary;
+        this.codec = codec;
     }
 
     private static final String SELECT_TERM_ID_SQL =
         "SELECT id FROM terms WHERE term = ?";
 
+    private static final String SELECT_TERM_BY_ID_SQL =
+        "SELECT term FROM terms WHERE id = ?";
+
     private static final String INSERT_TERM_SQL =
         "INSERT INTO terms (term, df) VALUES (?, 0) RETURNING id";
 
@@ -33,14 +47,36 @@ public class IndexRepositoryImpl implements IndexRepository {
 
     private static final String INSERT_POSTING_SQL = """
         INSERT INTO postings
-        (segment_id, term_id, doc_id, tf, positions, offsets)
-        VALUES (?, ?, ?, ?, ?, ?)
+        (segment_id, term_id, doc_id, tf, occurrences)
+        VALUES (?, ?, ?, ?, ?)
     """;
 
     private static final String SELECT_POSTINGS_BY_SEGMENT = """
-        SELECT term_id, doc_id, tf, positions, offsets
+        SELECT term_id, doc_id, tf, occurrences
+        FROM postings
+        WHERE segment_id = ?
+    """;
+
+    private static final String SELECT_TERM_DICTIONARY_BY_SEGMENT = """
+        SELECT t.term, COUNT(*) AS df
+        FROM postings p
+        JOIN terms t ON t.id = p.term_id
+        WHERE p.segment_id = ?
+        GROUP BY t.term
+    """;
+
+    private static final String SELECT_DOC_LENGTHS_BY_SEGMENT = """
+        SELECT doc_id, SUM(tf) AS length
         FROM postings
         WHERE segment_id = ?
+        GROUP BY doc_id
+    """;
+
+    private static final String SELECT_POSTINGS_BY_SEGMENT_AND_TERM = """
+        SELECT p.doc_id, p.tf, p.occurrences
+        FROM postings p
+        JOIN terms t ON t.id = p.term_id
+        WHERE p.segment_id = ? AND t.term = ?
     """;
 
     @Override
@@ -49,31 +85,36 @@ public class IndexRepositoryImpl implements IndexRepository {
             connection.setAutoCommit(false);
 
             Map<String, List<Token>> byTerm = tokens.stream().collect(Collectors.groupingBy(Token::getTerm));
+            Map<Integer, String> resolvedTerms = new HashMap<>();
 
             for(var entry : byTerm.entrySet()) {
                 String term = entry.getKey();
                 List<Token> termTokens = entry.getValue();
 
-                int termId = getOrCreateTerm(term);
+                int termId = getOrCreateTerm(term, resolvedTerms);
                 incrementDf(termId);
 
-                Posting posting = new Posting();
-                for(Token t : termTokens) {
-                    posting.addOccurrence(t.getPosition(), t.getOffset());
+                int tf = termTokens.size();
+                int[] positions = new int[tf];
+                int[] offsets = new int[tf];
+                for(int i = 0; i < tf; i++) {
+                    positions[i] = termTokens.get(i).getPosition();
+                    offsets[i] = termTokens.get(i).getOffset();
                 }
 
                 try (PreparedStatement ps = connection.prepareStatement(INSERT_POSTING_SQL)) {
                     ps.setInt(1, segmentId);
                     ps.setInt(2, termId);
                     ps.setInt(3, docId);
-                    ps.setInt(4, posting.getTermFrequency());
-                    ps.setArray(5, connection.createArrayOf("INTEGER", posting.getPositions().toArray()));
-                    ps.setArray(6, connection.createArrayOf("INTEGER", posting.getOffsets().toArray()));
+                    ps.setInt(4, tf);
+                    ps.setBytes(5, PostingsCodecs.encodeOccurrences(codec, positions, offsets, tf));
                     ps.executeUpdate();
                 }
             }
 
             connection.commit();
+            // Only after commit, so a rolled back insert never leaves a dangling id behind
+            resolvedTerms.forEach(termDictionary::add);
         } catch (Exception e) {
             rollback();
             throw new RuntimeException(e);
@@ -89,16 +130,22 @@ public class IndexRepositoryImpl implements IndexRepository {
         try (PreparedStatement ps = connection.prepareStatement(SELECT_POSTINGS_BY_SEGMENT)) {
             ps.setInt(1, segmentId);
             ResultSet rs = ps.executeQuery();
-            Map<Integer, String> termMap = loadTerms();
+            int[] positions = new int[16];
+            int[] offsets = new int[16];
 
             while (rs.next()) {
-                String term = termMap.get(rs.getInt("term_id"));
+                String term = term(rs.getInt("term_id"));
                 int docId = rs.getInt("doc_id");
 
-                Integer[] positions = (Integer[]) rs.getArray("positions").getArray();
-                Integer[] offsets = (Integer[]) rs.getArray("offsets").getArray();
+                int tf = rs.getInt("tf");
+
+                if(tf > positions.length) {
+                    positions = new int[tf];
+                    offsets = new int[tf];
+                }
+                PostingsCodecs.decodeOccurrences(rs.getBytes("occurrences"), tf, positions, offsets);
 
-                for(int i = 0; i < positions.length; i++) {
+                for(int i = 0; i < tf; i++) {
                     index.addTerm(term, docId, positions[i], offsets[i]);
                 }
             }
@@ -108,19 +155,107 @@ public class IndexRepositoryImpl implements IndexRepository {
         }
     }
     
-    private int getOrCreateTerm(String term) throws SQLException {
+    @Override
+    public Map<String, Integer> loadTermDictionary(int segmentId) {
+        Map<String, Integer> dictionary = new HashMap<>();
+
+        try (PreparedStatement ps = connection.prepareStatement(SELECT_TERM_DICTIONARY_BY_SEGMENT)) {
+            ps.setInt(1, segmentId);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                dictionary.put(rs.getString("term"), rs.getInt("df"));
+            }
+            return dictionary;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Map<Integer, Integer> loadDocLengths(int segmentId) {
+        Map<Integer, Integer> lengths = new HashMap<>();
+
+        try (PreparedStatement ps = connection.prepareStatement(SELECT_DOC_LENGTHS_BY_SEGMENT)) {
+            ps.setInt(1, segmentId);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                lengths.put(rs.getInt("doc_id"), rs.getInt("length"));
+            }
+            return lengths;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public InvertedIndex loadTermPostings(int segmentId, String term) {
+        InvertedIndex index = new InvertedIndex();
+
+        try (PreparedStatement ps = connection.prepareStatement(SELECT_POSTINGS_BY_SEGMENT_AND_TERM)) {
+            ps.setInt(1, segmentId);
+            ps.setString(2, term);
+            ResultSet rs = ps.executeQuery();
+            int[] positions = new int[16];
+            int[] offsets = new int[16];
+
+            while (rs.next()) {
+                int docId = rs.getInt("doc_id");
+                int tf = rs.getInt("tf");
+
+                if(tf > positions.length) {
+                    positions = new int[tf];
+                    offsets = new int[tf];
+                }
+                PostingsCodecs.decodeOccurrences(rs.getBytes("occurrences"), tf, positions, offsets);
+
+                for(int i = 0; i < tf; i++) {
+                    index.addTerm(term, docId, positions[i], offsets[i]);
+                }
+            }
+            return index;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private int getOrCreateTerm(String term, Map<Integer, String> resolvedTerms) throws SQLException {
+        int termId = termDictionary.id(term);
+        if (termId >= 0) return termId;
+
         try (PreparedStatement ps = connection.prepareStatement(SELECT_TERM_ID_SQL)) {
             ps.setString(1, term);
             ResultSet rs = ps.executeQuery();
-            if (rs.next()) return rs.getInt(1);
+            if (rs.next()) termId = rs.getInt(1);
         }
 
-        try (PreparedStatement ps = connection.prepareStatement(INSERT_TERM_SQL)) {
-            ps.setString(1, term);
+        if (termId < 0) {
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_TERM_SQL)) {
+                ps.setString(1, term);
+                ResultSet rs = ps.executeQuery();
+                rs.next();
+                termId = rs.getInt(1);
+            }
+        }
+
+        resolvedTerms.put(termId, term);
+        return termId;
+    }
+
+    // Falls back to the table for terms another process added after the dictionary was loaded
+    private String term(int termId) throws SQLException {
+        String term = termDictionary.term(termId);
+        if (term != null) return term;
+
+        try (PreparedStatement ps = connection.prepareStatement(SELECT_TERM_BY_ID_SQL)) {
+            ps.setInt(1, termId);
             ResultSet rs = ps.executeQuery();
-            rs.next();
-            return rs.getInt(1);
+            if (!rs.next()) {
+                throw new IllegalStateException("Unknown term id " + termId);
+            }
+            term = rs.getString(1);
         }
+        termDictionary.add(termId, term);
+        return term;
     }
 
     private void incrementDf(int termId) throws SQLException {
@@ -130,13 +265,16 @@ public class IndexRepositoryImpl implements IndexRepository {
         }
     }
 
-    private Map<Integer, String> loadTerms() throws SQLException {
+    @Override
+    public Map<Integer, String> loadTerms() {
         Map<Integer, String> map = new HashMap<>();
         try (PreparedStatement ps = connection.prepareStatement("SELECT id, term FROM terms")) {
             ResultSet rs = ps.executeQuery();
             while (rs.next()) {
                 map.put(rs.getInt("id"), rs.getString("term"));
             }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
         }
         return map;
     }
@@ -0,0 +1,175 @@
+package com.search.embedding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import com.search.index.QueryContext;
+import com.search.ranking.ScoredDoc;
+
+class EmbeddingMatrixTest {
+
+    private static final int DIMENSIONS = 32;
+    private static final int ROWS = 5000;
+    private static final HnswParams PARAMS = new HnswParams(16, 100, 64);
+
+    @Test
+    void exactTopKMatchesBruteForceAcrossBlocksAndThreads() {
+        Map<Long, float[]> embeddings = embeddings(new Random(41), 9000);
+        try (EmbeddingMatrix single = new EmbeddingMatrix(1); EmbeddingMatrix parallel = new EmbeddingMatrix(3)) {
+            single.putAll(embeddings);
+            parallel.putAll(embeddings);
+            Random random = new Random(42);
+            for(int q = 0; q < 20; q++) {
+                float[] query = vector(random);
+                List<ScoredDoc> expected = single.exactTopK(query, 10, QueryContext.unbounded());
+                assertEquals(expected, parallel.exactTopK(query, 10, QueryContext.unbounded()), "query " + q);
+                assertEquals(bruteForce(embeddings, query, 10), ids(expected), "query " + q);
+            }
+        }
+    }
+
+    @Test
+    void hnswRecallsNearlyAllOfTheExactTopK() {
+        try (EmbeddingMatrix matrix = new EmbeddingMatrix(1, PARAMS)) {
+            matrix.putAll(embeddings(new Random(43), ROWS));
+            Random random = new Random(44);
+            int found = 0;
+            int queries = 100;
+            for(int q = 0; q < queries; q++) {
+                float[] query = vector(random);
+                Set<Integer> exact = ids(matrix.exactTopK(query, 10, QueryContext.unbounded()));
+                for(ScoredDoc doc : matrix.topK(query, 10, QueryContext.unbounded())) {
+                    if(exact.contains(doc.docId())) found++;
+                }
+            }
+            double recall = found / (10.0 * queries);
+            assertTrue(recall >= 0.9, "recall@10 " + recall);
+        }
+    }
+
+    // As the hybrid engine runs them: each search on a fresh virtual thread, many at once
+    @Test
+    void concurrentSearchesOnVirtualThreadsMatchSequentialOnes() throws Exception {
+        try (EmbeddingMatrix matrix = new EmbeddingMatrix(1, PARAMS);
+             ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            matrix.putAll(embeddings(new Random(49), ROWS));
+            Random random = new Random(50);
+            List<float[]> queries = new ArrayList<>();
+            for(int q = 0; q < 200; q++) queries.add(vector(random));
+
+            List<Future<List<ScoredDoc>>> results = new ArrayList<>();
+            for(float[] query : queries) {
+                results.add(threads.submit(() -> matrix.topK(query, 10, QueryContext.unbounded())));
+            }
+            for(int q = 0; q < queries.size(); q++) {
+                assertEquals(matrix.topK(queries.get(q), 10, QueryContext.unbounded()), results.get(q).get(), "query " + q);
+            }
+        }
+    }
+
+    @Test
+    void savedGraphAnswersLikeTheOriginal() throws IOException {
+        Map<Long, float[]> embeddings = embeddings(new Random(45), 2000);
+        Path path = Files.createTempDirectory("hnsw").resolve("embeddings.hnsw");
+        try (EmbeddingMatrix original = new EmbeddingMatrix(1, PARAMS); EmbeddingMatrix loaded = new EmbeddingMatrix(1, PARAMS)) {
+            original.putAll(embeddings);
+            original.saveGraph(path);
+
+            // One embedding the file does not cover yet is linked in on load
+            Map<Long, float[]> current = new LinkedHashMap<>(embeddings);
+            float[] added = vector(new Random(46));
+            current.put(1_000_000L, added);
+            assertEquals(1, loaded.loadGraph(path, current));
+            assertEquals(current.size(), loaded.size());
+
+            Random random = new Random(47);
+            for(int q = 0; q < 20; q++) {
+                float[] query = vector(random);
+                assertEquals(original.topK(query, 10, QueryContext.unbounded()).subList(0, 5),
+                    loaded.topK(query, 10, QueryContext.unbounded()).stream()
+                        .filter(doc -> doc.docId() != 1_000_000).toList().subList(0, 5), "query " + q);
+            }
+            assertEquals(1_000_000, loaded.topK(added, 1, QueryContext.unbounded()).get(0).docId());
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void corruptGraphFileIsRejected() throws IOException {
+        Map<Long, float[]> embeddings = embeddings(new Random(48), 500);
+        Path path = Files.createTempDirectory("hnsw").resolve("embeddings.hnsw");
+        try (EmbeddingMatrix original = new EmbeddingMatrix(1, PARAMS); EmbeddingMatrix loaded = new EmbeddingMatrix(1, PARAMS)) {
+            original.putAll(embeddings);
+            original.saveGraph(path);
+            byte[] bytes = Files.readAllBytes(path);
+            bytes[bytes.length / 2] ^= 1;
+            Files.write(path, bytes);
+
+            assertThrows(IOException.class, () -> loaded.loadGraph(path, embeddings));
+            assertEquals(0, loaded.size());
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static Set<Integer> bruteForce(Map<Long, float[]> embeddings, float[] query, int k) {
+        return embeddings.entrySet().stream()
+            .sorted((a, b) -> {
+                int byScore = Double.compare(cosine(query, b.getValue()), cosine(query, a.getValue()));
+                return byScore != 0 ? byScore : Long.compare(a.getKey(), b.getKey());
+            })
+            .limit(k)
+            .map(entry -> entry.getKey().intValue())
+            .collect(HashSet::new, Set::add, Set::addAll);
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, normA = 0, normB = 0;
+        for(int i = 0; i < a.length; i++) {
+            dot += (double) a[i] * b[i];
+            normA += (double) a[i] * a[i];
+            normB += (double) b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    private static Set<Integer> ids(List<ScoredDoc> docs) {
+        Set<Integer> ids = new HashSet<>();
+        for(ScoredDoc doc : docs) ids.add(doc.docId());
+        return ids;
+    }
+
+    private static Map<Long, float[]> embeddings(Random random, int rows) {
+        Map<Long, float[]> embeddings = new LinkedHashMap<>();
+        for(long id = 1; id <= rows; id++) {
+            embeddings.put(id, vector(random));
+        }
+        return embeddings;
+    }
+
+    private static float[] vector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        for(int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
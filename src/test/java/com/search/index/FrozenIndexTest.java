@@ -0,0 +1,126 @@
+package com.search.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import com.search.index.codec.PostingsCodec;
+import com.search.index.codec.PostingsCodecs;
+
+class FrozenIndexTest {
+
+    // Doc freqs around the 128-doc block: one partial block, exactly one, one plus a partial, several
+    private static final int[] DOC_FREQS = {1, 127, 128, 129, 256, 300, 1000};
+
+    @Test
+    void postingsMatchTheSourceAcrossBlockBoundaries() {
+        InvertedIndex source = index(new Random(3));
+        for(PostingsCodec codec : List.of(PostingsCodecs.VBYTE, PostingsCodecs.FOR)) {
+            FrozenIndex frozen = FrozenIndex.freeze(source, codec);
+            for(int docFreq : DOC_FREQS) {
+                String term = "t" + docFreq;
+                Map<Integer, Posting> expected = new TreeMap<>(source.getPostings(term));
+                int termId = frozen.termId(term);
+                assertEquals(docFreq, frozen.docFreq(termId), term);
+
+                PostingsIterator postings = frozen.postings(termId);
+                int maxTf = 0;
+                for(var entry : expected.entrySet()) {
+                    String message = codec.name() + " " + term + " doc " + entry.getKey();
+                    assertEquals(entry.getKey().intValue(), postings.nextDoc(), message);
+                    assertEquals(entry.getValue().getTermFrequency(), postings.termFrequency(), message);
+                    assertOccurrences(entry.getValue().occurrences(), postings.occurrences(), message);
+                    maxTf = Math.max(maxTf, postings.termFrequency());
+                }
+                assertEquals(PostingsIterator.NO_MORE_DOCS, postings.nextDoc(), term);
+                assertEquals(maxTf, postings.maxTermFrequency(), term);
+            }
+        }
+    }
+
+    @Test
+    void advanceLandsOnTheFirstDocAtOrAfterTheTarget() {
+        InvertedIndex source = index(new Random(4));
+        FrozenIndex frozen = FrozenIndex.freeze(source);
+        Random random = new Random(5);
+        for(int docFreq : DOC_FREQS) {
+            String term = "t" + docFreq;
+            TreeMap<Integer, Posting> expected = new TreeMap<>(source.getPostings(term));
+            int termId = frozen.termId(term);
+            for(int trial = 0; trial < 50; trial++) {
+                PostingsIterator postings = frozen.postings(termId);
+                int target = 0;
+                while(true) {
+                    target += 1 + random.nextInt(400);
+                    Integer next = expected.ceilingKey(target);
+                    int doc = postings.advance(target);
+                    if(next == null) {
+                        assertEquals(PostingsIterator.NO_MORE_DOCS, doc, term);
+                        break;
+                    }
+                    assertEquals(next.intValue(), doc, term + " advance(" + target + ")");
+                    assertEquals(expected.get(next).getTermFrequency(), postings.termFrequency(), term);
+                    assertOccurrences(expected.get(next).occurrences(), postings.occurrences(), term + " doc " + doc);
+                    target = doc;
+                }
+            }
+        }
+    }
+
+    @Test
+    void blockMaxTermFrequencyBoundsEveryDocInTheBlock() {
+        InvertedIndex source = index(new Random(6));
+        FrozenIndex frozen = FrozenIndex.freeze(source);
+        for(int docFreq : DOC_FREQS) {
+            String term = "t" + docFreq;
+            TreeMap<Integer, Posting> expected = new TreeMap<>(source.getPostings(term));
+            PostingsIterator postings = frozen.postings(frozen.termId(term));
+            int target = 0;
+            while(true) {
+                int last = postings.advanceShallow(target);
+                int bound = postings.blockMaxTermFrequency();
+                for(Posting posting : expected.subMap(target, true, last, true).values()) {
+                    assertTrue(posting.getTermFrequency() <= bound, term + " block ending at " + last);
+                }
+                // A single block reports NO_MORE_DOCS - 1, past every doc
+                if(last >= PostingsIterator.NO_MORE_DOCS - 1) break;
+                target = last + 1;
+            }
+        }
+    }
+
+    // Term "t<n>" occurs in n random docs out of 5000, 1 to 5 times each
+    private static InvertedIndex index(Random random) {
+        InvertedIndex index = new InvertedIndex();
+        for(int docFreq : DOC_FREQS) {
+            List<Integer> docs = new ArrayList<>();
+            for(int doc = 0; doc < 5000; doc++) docs.add(doc);
+            Collections.shuffle(docs, random);
+            for(int doc : docs.subList(0, docFreq)) {
+                int tf = 1 + random.nextInt(5);
+                for(int i = 0; i < tf; i++) {
+                    index.addTerm("t" + docFreq, doc, i * 3 + random.nextInt(3), i * 20 + random.nextInt(20));
+                }
+            }
+        }
+        return index;
+    }
+
+    private static void assertOccurrences(OccurrenceIterator expected, OccurrenceIterator actual, String message) {
+        while(expected.next()) {
+            assertTrue(actual.next(), message);
+            assertEquals(expected.position(), actual.position(), message);
+            assertEquals(expected.offset(), actual.offset(), message);
+        }
+        assertFalse(actual.next(), message);
+    }
+}
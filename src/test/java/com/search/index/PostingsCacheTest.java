@@ -0,0 +1,67 @@
+package com.search.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class PostingsCacheTest {
+
+    private static final int DOCS = 100_000;
+    private static final int TERMS = 200;
+
+    // Each term is posted only in docs near the end of a large segment, so a norms array sized by
+    // its highest doc id would dwarf its postings
+    @Test
+    void lazySegmentsKeepTheCacheWithinItsBudget() {
+        InvertedIndex source = new InvertedIndex();
+        Map<String, Integer> dictionary = new HashMap<>();
+        Map<Integer, Integer> docLengths = new HashMap<>();
+        for(int t = 0; t < TERMS; t++) {
+            String term = "t" + t;
+            for(int i = 0; i < 3; i++) {
+                int docId = DOCS - 1 - (t + i * TERMS) % 1000;
+                source.addTerm(term, docId, i, 0);
+                docLengths.merge(docId, 1, Integer::sum);
+            }
+            dictionary.put(term, source.getPostings(term).size());
+        }
+
+        long maxBytes = 64 * 1024;
+        PostingsCache cache = new PostingsCache(maxBytes);
+        Norms norms = Norms.fromLengths(docLengths);
+        LazyIndex lazy = new LazyIndex(1, dictionary, norms, term -> single(source, term), cache);
+
+        for(int termId = 0; termId < lazy.termCount(); termId++) {
+            PostingsIterator postings = lazy.postings(termId);
+            int docs = 0;
+            while(postings.nextDoc() != PostingsIterator.NO_MORE_DOCS) docs++;
+            assertEquals(lazy.docFreq(termId), docs, lazy.term(termId));
+        }
+
+        PostingsCache.Stats stats = cache.stats();
+        assertTrue(stats.bytes() <= maxBytes, stats.bytes() + " cached bytes over a budget of " + maxBytes);
+        assertEquals(TERMS, stats.entries());
+
+        long cachedBytes = 0;
+        for(int termId = 0; termId < lazy.termCount(); termId++) {
+            FrozenIndex cached = cache.get(1, termId, id -> { throw new AssertionError("evicted " + id); });
+            assertEquals(0, cached.norms().buffer().capacity(), lazy.term(termId));
+            cachedBytes += cached.encodedBytes();
+        }
+        assertEquals(stats.bytes(), cachedBytes);
+        assertEquals(norms, lazy.norms());
+    }
+
+    private static InvertedIndex single(InvertedIndex source, String term) {
+        InvertedIndex index = new InvertedIndex();
+        source.getPostings(term).forEach((docId, posting) -> {
+            OccurrenceIterator it = posting.occurrences();
+            while(it.next()) index.addTerm(term, docId, it.position(), it.offset());
+        });
+        return index;
+    }
+}
@@ -0,0 +1,116 @@
+package com.search.index.codec;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntUnaryOperator;
+
+import org.junit.jupiter.api.Test;
+
+class PostingsCodecTest {
+
+    private static final List<PostingsCodec> CODECS = List.of(PostingsCodecs.VBYTE, PostingsCodecs.FOR);
+
+    // Around the FOR block size: empty, partial only, exactly full blocks, full blocks plus a partial tail
+    private static final int[] LENGTHS = {0, 1, 127, 128, 129, 255, 256, 257, 1000};
+
+    @Test
+    void roundTripsEdgeValues() {
+        for(int length : LENGTHS) {
+            assertRoundTrip(filled(length, i -> 0), "zeros");
+            assertRoundTrip(filled(length, i -> Integer.MAX_VALUE), "max");
+            assertRoundTrip(filled(length, i -> i % 2 == 0 ? 0 : Integer.MAX_VALUE), "alternating extremes");
+            // Every bit width from 0 to 31
+            assertRoundTrip(filled(length, i -> i % 32 == 0 ? 0 : 1 << (i % 32 - 1)), "powers of two");
+            assertRoundTrip(filled(length, i -> 127 + i % 3), "vbyte byte boundary");
+        }
+    }
+
+    @Test
+    void roundTripsRandomGaps() {
+        Random random = new Random(1);
+        for(int length : LENGTHS) {
+            for(int bits = 1; bits <= 31; bits += 5) {
+                int mask = (int) ((1L << bits) - 1);
+                assertRoundTrip(filled(length, i -> random.nextInt() & mask), "random " + bits + " bits");
+            }
+        }
+    }
+
+    @Test
+    void decodesAtAnOffsetAndSkipsToTheSamePosition() {
+        int[] first = filled(300, i -> i * 7);
+        int[] second = filled(129, i -> 1000 - i);
+        for(PostingsCodec codec : CODECS) {
+            BytesWriter out = new BytesWriter(16);
+            out.writeByte(0x5A);
+            codec.encode(first, 0, first.length, out);
+            codec.encode(second, 0, second.length, out);
+            ByteBuffer in = ByteBuffer.wrap(out.toByteArray());
+
+            int[] decoded = new int[first.length];
+            int afterFirst = codec.decode(in, 1, decoded, first.length);
+            assertArrayEquals(first, decoded, codec.name());
+            assertEquals(afterFirst, codec.skip(in, 1, first.length), codec.name());
+
+            decoded = new int[second.length];
+            int end = codec.decode(in, afterFirst, decoded, second.length);
+            assertArrayEquals(second, decoded, codec.name());
+            assertEquals(in.capacity(), end, codec.name());
+            assertEquals(end, codec.skip(in, afterFirst, second.length), codec.name());
+        }
+    }
+
+    @Test
+    void encodesASliceOfTheInput() {
+        int[] values = filled(400, i -> i);
+        for(PostingsCodec codec : CODECS) {
+            BytesWriter out = new BytesWriter(16);
+            codec.encode(values, 10, 200, out);
+            int[] decoded = new int[200];
+            codec.decode(ByteBuffer.wrap(out.toByteArray()), 0, decoded, 200);
+            assertArrayEquals(Arrays.copyOfRange(values, 10, 210), decoded, codec.name());
+        }
+    }
+
+    @Test
+    void roundTripsOccurrences() {
+        for(PostingsCodec codec : CODECS) {
+            for(int count : LENGTHS) {
+                int[] positions = filled(count, i -> i * 3 + 1);
+                int[] offsets = filled(count, i -> i * 17);
+                byte[] blob = PostingsCodecs.encodeOccurrences(codec, positions, offsets, count);
+
+                int[] decodedPositions = new int[count];
+                int[] decodedOffsets = new int[count];
+                PostingsCodecs.decodeOccurrences(blob, count, decodedPositions, decodedOffsets);
+                assertArrayEquals(positions, decodedPositions, codec.name() + " positions, count " + count);
+                assertArrayEquals(offsets, decodedOffsets, codec.name() + " offsets, count " + count);
+            }
+        }
+    }
+
+    private static void assertRoundTrip(int[] values, String label) {
+        for(PostingsCodec codec : CODECS) {
+            BytesWriter out = new BytesWriter(16);
+            codec.encode(values, 0, values.length, out);
+            ByteBuffer in = ByteBuffer.wrap(out.toByteArray());
+
+            int[] decoded = new int[values.length];
+            String message = codec.name() + " " + label + ", length " + values.length;
+            assertEquals(in.capacity(), codec.decode(in, 0, decoded, values.length), message);
+            assertArrayEquals(values, decoded, message);
+            assertEquals(in.capacity(), codec.skip(in, 0, values.length), message);
+        }
+    }
+
+    private static int[] filled(int length, IntUnaryOperator value) {
+        int[] values = new int[length];
+        Arrays.setAll(values, value);
+        return values;
+    }
+}
@@ -0,0 +1,111 @@
+package com.search.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import com.search.index.FrozenIndex;
+import com.search.index.InvertedIndex;
+
+// The automaton must accept exactly the strings a dynamic-programming edit distance puts within
+// maxEdits, with the same distance
+class LevenshteinAutomatonTest {
+
+    // Small alphabet so random strings are often within a few edits of each other; 'é' and 'ß'
+    // take the non-ASCII mask path
+    private static final String ALPHABET = "abcdeéß";
+
+    @Test
+    void distanceMatchesBruteForce() {
+        Random random = new Random(21);
+        for(int trial = 0; trial < 2000; trial++) {
+            String term = randomString(random, 0, 8);
+            for(int maxEdits = 0; maxEdits <= 3; maxEdits++) {
+                LevenshteinAutomaton automaton = new LevenshteinAutomaton(term, maxEdits);
+                for(int i = 0; i < 20; i++) {
+                    String candidate = random.nextBoolean() ? randomString(random, 0, 10) : mutate(random, term);
+                    assertEquals(expected(term, candidate, maxEdits), automaton.distance(candidate),
+                        term + " vs " + candidate + " within " + maxEdits);
+                }
+            }
+        }
+    }
+
+    @Test
+    void intersectFindsExactlyTheTermsWithinReach() {
+        Random random = new Random(22);
+        InvertedIndex source = new InvertedIndex();
+        for(int i = 0; i < 3000; i++) {
+            source.addTerm(randomString(random, 1, 9), 1, i, i);
+        }
+        FrozenIndex index = FrozenIndex.freeze(source);
+
+        for(int trial = 0; trial < 200; trial++) {
+            String term = randomString(random, 1, 8);
+            for(int maxEdits = 0; maxEdits <= 2; maxEdits++) {
+                Map<Integer, Integer> expected = new TreeMap<>();
+                for(int termId = 0; termId < index.termCount(); termId++) {
+                    int distance = expected(term, index.term(termId), maxEdits);
+                    if(distance >= 0) expected.put(termId, distance);
+                }
+                Map<Integer, Integer> actual = new TreeMap<>();
+                new LevenshteinAutomaton(term, maxEdits).intersect(index, actual::put);
+                assertEquals(expected, actual, term + " within " + maxEdits);
+            }
+        }
+    }
+
+    @Test
+    void acceptsTermsUpToMaxLength() {
+        String longest = "a".repeat(LevenshteinAutomaton.MAX_LENGTH);
+        LevenshteinAutomaton automaton = new LevenshteinAutomaton(longest, 2);
+        assertEquals(0, automaton.distance(longest));
+        assertEquals(2, automaton.distance(longest.substring(2)));
+        assertEquals(-1, automaton.distance(longest.substring(3)));
+        assertThrows(IllegalArgumentException.class, () -> new LevenshteinAutomaton(longest + "a", 1));
+    }
+
+    // Edit distance, or -1 beyond maxEdits
+    private static int expected(String a, String b, int maxEdits) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for(int i = 0; i <= a.length(); i++) d[i][0] = i;
+        for(int j = 0; j <= b.length(); j++) d[0][j] = j;
+        for(int i = 1; i <= a.length(); i++) {
+            for(int j = 1; j <= b.length(); j++) {
+                int substitution = d[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                d[i][j] = Math.min(substitution, Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+            }
+        }
+        int distance = d[a.length()][b.length()];
+        return distance <= maxEdits ? distance : -1;
+    }
+
+    private static String randomString(Random random, int minLength, int maxLength) {
+        int length = minLength + random.nextInt(maxLength - minLength + 1);
+        StringBuilder s = new StringBuilder(length);
+        for(int i = 0; i < length; i++) {
+            s.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return s.toString();
+    }
+
+    // One to three random insertions, deletions or substitutions
+    private static String mutate(Random random, String term) {
+        StringBuilder s = new StringBuilder(term);
+        for(int edits = 1 + random.nextInt(3); edits > 0; edits--) {
+            int at = random.nextInt(s.length() + 1);
+            char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+            switch(random.nextInt(3)) {
+                case 0 -> s.insert(at, c);
+                case 1 -> { if(at < s.length()) s.deleteCharAt(at); }
+                default -> { if(at < s.length()) s.setCharAt(at, c); }
+            }
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,142 @@
+package com.search.ranking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.search.index.FrozenIndex;
+import com.search.index.IndexReader;
+import com.search.index.InvertedIndex;
+import com.search.index.PostingsIterator;
+import com.search.index.QueryContext;
+
+// Block-max top-k must return exactly the docs and scores of scoring every matching doc
+class BlockMaxWandTest {
+
+    private static final int DOCS = 4000;
+    private static final int VOCABULARY = 300;
+    private static final List<Ranker> RANKERS = List.of(new Bm25Ranker(), new TfIdfRanker());
+
+    private final IndexReader index = FrozenIndex.freeze(randomIndex(new Random(11)));
+
+    @Test
+    void disjunctionMatchesExhaustiveScoring() {
+        for(Ranker ranker : RANKERS) {
+            for(int[] termIds : queries(new Random(12))) {
+                List<ScoredDoc> expected = exhaustive(ranker, termIds, false);
+                for(int k : new int[]{1, 10, 100, DOCS}) {
+                    assertEquals(expected.subList(0, Math.min(k, expected.size())),
+                        ranker.topK(termIds, index, DOCS, k, null, QueryContext.unbounded()),
+                        label(ranker, termIds, k));
+                }
+            }
+        }
+    }
+
+    @Test
+    void conjunctionMatchesExhaustiveScoring() {
+        for(Ranker ranker : RANKERS) {
+            for(int[] termIds : queries(new Random(13))) {
+                List<ScoredDoc> expected = exhaustive(ranker, termIds, true);
+                for(int k : new int[]{1, 10, 100, DOCS}) {
+                    assertEquals(expected.subList(0, Math.min(k, expected.size())),
+                        ranker.topK(termIds, List.of(), null, index, DOCS, k, null, QueryContext.unbounded()),
+                        label(ranker, termIds, k));
+                }
+            }
+        }
+    }
+
+    @Test
+    void pagesAfterACursorConcatenateToTheFullRanking() {
+        Ranker ranker = new Bm25Ranker();
+        for(int[] termIds : queries(new Random(14))) {
+            for(boolean conjunctive : new boolean[]{false, true}) {
+                List<ScoredDoc> paged = new ArrayList<>();
+                ScoredDoc after = null;
+                while(true) {
+                    List<ScoredDoc> page = conjunctive
+                        ? ranker.topK(termIds, List.of(), null, index, DOCS, 97, after, QueryContext.unbounded())
+                        : ranker.topK(termIds, index, DOCS, 97, after, QueryContext.unbounded());
+                    if(page.isEmpty()) break;
+                    paged.addAll(page);
+                    after = page.get(page.size() - 1);
+                }
+                assertEquals(exhaustive(ranker, termIds, conjunctive), paged, label(ranker, termIds, 97));
+            }
+        }
+    }
+
+    // Sums term scores in query order, as the block-max and iterator paths do
+    private List<ScoredDoc> exhaustive(Ranker ranker, int[] termIds, boolean conjunctive) {
+        Map<Integer, Double> scores = new HashMap<>();
+        Map<Integer, Integer> matched = new HashMap<>();
+        for(int termId : termIds) {
+            TermScorer scorer = ranker.termScorer(index, termId, DOCS);
+            PostingsIterator postings = Ranker.postings(index, termId);
+            for(int doc = postings.nextDoc(); doc != PostingsIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                scores.merge(doc, scorer.score(doc, postings.termFrequency()), Double::sum);
+                matched.merge(doc, 1, Integer::sum);
+            }
+        }
+        List<ScoredDoc> ranked = new ArrayList<>();
+        scores.forEach((doc, score) -> {
+            if(!conjunctive || matched.get(doc) == termIds.length) ranked.add(new ScoredDoc(doc, score));
+        });
+        ranked.sort(Comparator.comparingDouble(ScoredDoc::score).reversed().thenComparingInt(ScoredDoc::docId));
+        return ranked;
+    }
+
+    // Frequent and rare terms together, single terms, and terms the index does not contain (-1)
+    private List<int[]> queries(Random random) {
+        List<int[]> queries = new ArrayList<>();
+        queries.add(new int[]{termId(0)});
+        queries.add(new int[]{termId(0), termId(1)});
+        queries.add(new int[]{termId(2), termId(250)});
+        queries.add(new int[]{termId(0), -1});
+        queries.add(new int[]{-1});
+        for(int i = 0; i < 20; i++) {
+            Set<Integer> terms = new HashSet<>();
+            int length = 2 + random.nextInt(4);
+            while(terms.size() < length) terms.add(termId(skewed(random)));
+            queries.add(terms.stream().mapToInt(Integer::intValue).toArray());
+        }
+        return queries;
+    }
+
+    private int termId(int term) {
+        return index.termId("w" + term);
+    }
+
+    private static String label(Ranker ranker, int[] termIds, int k) {
+        return ranker.getClass().getSimpleName() + " " + Arrays.toString(termIds) + " k=" + k;
+    }
+
+    // Docs of 5 to 300 tokens drawn from a skewed vocabulary, so term frequencies, doc lengths and
+    // block maxima all vary; many short docs repeat the same few terms and tie on score
+    private static InvertedIndex randomIndex(Random random) {
+        InvertedIndex index = new InvertedIndex();
+        for(int doc = 0; doc < DOCS; doc++) {
+            int length = doc % 5 == 0 ? 5 : 5 + random.nextInt(296);
+            for(int position = 0; position < length; position++) {
+                int term = doc % 5 == 0 ? position % 3 : skewed(random);
+                index.addTerm("w" + term, doc, position, position * 6);
+            }
+        }
+        return index;
+    }
+
+    private static int skewed(Random random) {
+        return Math.min(VOCABULARY - 1, (int) Math.abs(random.nextGaussian() * VOCABULARY / 4));
+    }
+}
@@ -0,0 +1,76 @@
+package com.search.ranking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// Whichever kernel is loaded (SIMD under --add-modules jdk.incubator.vector, scalar otherwise)
+// must agree with a double-precision reference up to float rounding
+class DotProductTest {
+
+    @Test
+    void matchesReferenceForEveryTailLength() {
+        Random random = new Random(31);
+        float[] a = randomVector(random, 1100);
+        float[] b = randomVector(random, 1100);
+        for(int length = 0; length <= 70; length++) {
+            assertClose(a, 3, b, 5, length);
+        }
+        for(int length : new int[]{128, 256, 384, 768, 1024, 1031}) {
+            assertClose(a, 0, b, 0, length);
+            assertClose(a, 7, b, 61, length);
+        }
+    }
+
+    @Test
+    void scalarKernelMatchesReference() {
+        Random random = new Random(32);
+        float[] a = randomVector(random, 800);
+        float[] b = randomVector(random, 800);
+        DotProduct.Scalar scalar = new DotProduct.Scalar();
+        for(int length : new int[]{0, 1, 3, 4, 5, 768, 799}) {
+            assertEquals(reference(a, 0, b, 1, length), scalar.compute(a, 0, b, 1, length), tolerance(length), "length " + length);
+        }
+    }
+
+    @Test
+    void normalizeGivesUnitLengthAndKeepsZero() {
+        float[] normalized = DotProduct.normalize(new float[]{3, 4});
+        assertEquals(0.6f, normalized[0], 1e-6f, "x");
+        assertEquals(0.8f, normalized[1], 1e-6f, "y");
+
+        float[] random = DotProduct.normalize(randomVector(new Random(33), 768));
+        assertEquals(1f, DotProduct.compute(random, 0, random, 0, random.length), 1e-5f, "norm");
+
+        float[] zero = DotProduct.normalize(new float[4]);
+        assertEquals(0f, DotProduct.compute(zero, 0, zero, 0, zero.length), 0f, "zero");
+    }
+
+    private static void assertClose(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        assertEquals(reference(a, aOffset, b, bOffset, length), DotProduct.compute(a, aOffset, b, bOffset, length),
+            tolerance(length), "length " + length + " (vectorized: " + DotProduct.isVectorized() + ")");
+    }
+
+    private static float reference(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        double sum = 0;
+        for(int i = 0; i < length; i++) {
+            sum += (double) a[aOffset + i] * b[bOffset + i];
+        }
+        return (float) sum;
+    }
+
+    // Products of values in [-1, 1]; float sums drift by about one ulp of 1 per few terms
+    private static float tolerance(int length) {
+        return 1e-6f * (length + 1);
+    }
+
+    private static float[] randomVector(Random random, int length) {
+        float[] vector = new float[length];
+        for(int i = 0; i < length; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+        }
+        return vector;
+    }
+}